@@ -42,6 +42,7 @@ public class MainActivity2 extends AppCompatActivity implements OnPageChangeList
         mViewPager.addOnPageChangeListener(this);
         setupViewPager(mViewPager);
         Tooltip.dbg = true;
+        Tooltip.prewarm(this, 0, 0, 2);
 
     }
 
@@ -80,6 +81,7 @@ public class MainActivity2 extends AppCompatActivity implements OnPageChangeList
                 .anchor(tab, Tooltip.Gravity.BOTTOM)
                 .closePolicy(Tooltip.ClosePolicy.TOUCH_ANYWHERE_NO_CONSUME, 3000)
                 .text("Tooltip on a TabLayout child...")
+                .prepareTextInBackground(true)
                 .fadeDuration(200)
                 .fitToScreen(false)
                 .maxWidth(400)
@@ -247,6 +249,7 @@ public class MainActivity2 extends AppCompatActivity implements OnPageChangeList
                         .maxWidth(metrics.widthPixels / 2)
                         .withCallback(this)
                         .floatingAnimation(AnimationBuilder.DEFAULT)
+                        .cacheBackground(true)
                         .build()
                 ).show();
 
@@ -0,0 +1,304 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.view.ScrollingView;
+import android.view.View;
+import android.view.ViewParent;
+import android.view.ViewTreeObserver;
+import android.widget.AbsListView;
+import android.widget.HorizontalScrollView;
+import android.widget.ScrollView;
+
+import java.util.ArrayList;
+
+import static android.util.Log.INFO;
+import static it.sephiroth.android.library.tooltip.Utils.log;
+
+/**
+ * Tracks the anchors of all the tooltips attached to the same window.<br />
+ * Only one pre-draw listener is registered per window: before every frame each distinct anchor
+ * is resolved once and the result is dispatched to all the tooltips subscribed to it.<br />
+ * Anchors inside a scrolling container can optionally be followed using the container scroll
+ * deltas, in which case a full location query is done only after a layout pass and every other
+ * frame only walks the hierarchy up to the scrolling container.
+ */
+final class AnchorTracker
+    implements ViewTreeObserver.OnPreDrawListener, ViewTreeObserver.OnGlobalLayoutListener,
+    View.OnAttachStateChangeListener {
+    private static final String TAG = "AnchorTracker";
+
+    interface OnAnchorListener {
+        /**
+         * Called right before every frame is drawn.
+         *
+         * @param rect    the anchor rect, in screen coordinates. null for tooltips without an anchor view
+         * @param changed true if the anchor rect changed since the last frame
+         */
+        void onAnchorResolved(@Nullable Rect rect, boolean changed);
+
+        /**
+         * The anchor view has been detached from its window
+         */
+        void onAnchorDetached();
+    }
+
+    private static final class Entry {
+        final View anchor;
+        final Rect rect = new Rect();
+        final ArrayList<OnAnchorListener> listeners = new ArrayList<>(1);
+        boolean changed;
+        View scrollParent;
+        int scrollParentX;
+        int scrollParentY;
+
+        Entry(final View anchor) {
+            this.anchor = anchor;
+        }
+    }
+
+    private final View mRoot;
+    private final ArrayList<Entry> mEntries = new ArrayList<>();
+    private final ArrayList<Entry> mDispatchEntries = new ArrayList<>();
+    private final ArrayList<OnAnchorListener> mDispatchListeners = new ArrayList<>();
+    private final Rect mTempRect = new Rect();
+    private final int[] mTempLocation = new int[2];
+    private boolean mRegistered;
+    private boolean mLayoutChanged;
+
+    private AnchorTracker(final View root) {
+        mRoot = root;
+    }
+
+    /**
+     * @param root the window root view
+     * @return the tracker for the given window
+     */
+    static AnchorTracker get(@NonNull final View root) {
+        AnchorTracker tracker = (AnchorTracker) root.getTag(R.id.ttlm_anchor_tracker);
+        if (null == tracker) {
+            tracker = new AnchorTracker(root);
+            root.setTag(R.id.ttlm_anchor_tracker, tracker);
+        }
+        return tracker;
+    }
+
+    /**
+     * Subscribe to the given anchor changes.
+     *
+     * @param anchor       the anchor view, or null for tooltips anchored to a point
+     * @param listener     the listener
+     * @param outRect      if not null, receives the current anchor rect
+     * @param followScroll true to follow the anchor using the scroll deltas of its nearest scrolling parent
+     */
+    void subscribe(
+        @Nullable final View anchor, @NonNull final OnAnchorListener listener, @Nullable final Rect outRect,
+        final boolean followScroll) {
+        Entry entry = findEntry(anchor);
+
+        if (null == entry) {
+            entry = new Entry(anchor);
+            if (null != anchor) {
+                if (followScroll) {
+                    entry.scrollParent = findScrollParent(anchor);
+                    log(TAG, INFO, "scroll parent: %s", entry.scrollParent);
+                }
+                resolve(entry, entry.rect);
+                anchor.addOnAttachStateChangeListener(this);
+            }
+            mEntries.add(entry);
+        } else if (!followScroll) {
+            // at least one subscriber needs the full location query
+            entry.scrollParent = null;
+        }
+
+        if (!entry.listeners.contains(listener)) {
+            entry.listeners.add(listener);
+        }
+
+        if (null != outRect && null != anchor) {
+            outRect.set(entry.rect);
+        }
+
+        if (!mRegistered && mRoot.getViewTreeObserver().isAlive()) {
+            final ViewTreeObserver observer = mRoot.getViewTreeObserver();
+            observer.addOnPreDrawListener(this);
+            observer.addOnGlobalLayoutListener(this);
+            mRegistered = true;
+        }
+    }
+
+    void unsubscribe(@Nullable final View anchor, @NonNull final OnAnchorListener listener) {
+        final Entry entry = findEntry(anchor);
+        if (null == entry) {
+            return;
+        }
+
+        entry.listeners.remove(listener);
+
+        if (entry.listeners.isEmpty()) {
+            removeEntry(entry);
+        }
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        if (mEntries.isEmpty()) {
+            unregister();
+            return true;
+        }
+
+        // listeners may unsubscribe while dispatching
+        mDispatchEntries.addAll(mEntries);
+
+        for (int i = 0; i < mDispatchEntries.size(); i++) {
+            final Entry entry = mDispatchEntries.get(i);
+            if (null == entry.anchor) {
+                continue;
+            }
+
+            // scroll notifications are dispatched only after the pre-draw, so the (cheap) walk up to
+            // the scrolling parent runs on every frame
+            if (null == entry.scrollParent || mLayoutChanged || !resolveFromScrollParent(entry, mTempRect)) {
+                resolve(entry, mTempRect);
+            }
+            entry.changed = !mTempRect.equals(entry.rect);
+            entry.rect.set(mTempRect);
+        }
+        mLayoutChanged = false;
+
+        for (int i = 0; i < mDispatchEntries.size(); i++) {
+            final Entry entry = mDispatchEntries.get(i);
+            mDispatchListeners.addAll(entry.listeners);
+
+            for (int j = 0; j < mDispatchListeners.size(); j++) {
+                mDispatchListeners.get(j).onAnchorResolved(null != entry.anchor ? entry.rect : null, entry.changed);
+            }
+            mDispatchListeners.clear();
+        }
+        mDispatchEntries.clear();
+        return true;
+    }
+
+    @Override
+    public void onGlobalLayout() {
+        mLayoutChanged = true;
+    }
+
+    @Override
+    public void onViewAttachedToWindow(final View v) {
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(final View v) {
+        log(TAG, INFO, "onViewDetachedFromWindow: %s", v);
+
+        final Entry entry = findEntry(v);
+        if (null == entry) {
+            return;
+        }
+
+        removeEntry(entry);
+
+        mDispatchListeners.addAll(entry.listeners);
+        for (int i = 0; i < mDispatchListeners.size(); i++) {
+            mDispatchListeners.get(i).onAnchorDetached();
+        }
+        mDispatchListeners.clear();
+    }
+
+    private void removeEntry(final Entry entry) {
+        mEntries.remove(entry);
+
+        if (null != entry.anchor) {
+            entry.anchor.removeOnAttachStateChangeListener(this);
+        }
+
+        if (mEntries.isEmpty()) {
+            unregister();
+        }
+    }
+
+    @SuppressWarnings ("deprecation")
+    private void unregister() {
+        if (mRegistered && mRoot.getViewTreeObserver().isAlive()) {
+            final ViewTreeObserver observer = mRoot.getViewTreeObserver();
+            observer.removeOnPreDrawListener(this);
+            observer.removeGlobalOnLayoutListener(this);
+        }
+        mRegistered = false;
+    }
+
+    @Nullable
+    private Entry findEntry(@Nullable final View anchor) {
+        for (int i = 0; i < mEntries.size(); i++) {
+            if (mEntries.get(i).anchor == anchor) {
+                return mEntries.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Full location query of the anchor (and of its scrolling parent, if any)
+     */
+    private void resolve(final Entry entry, final Rect outRect) {
+        entry.anchor.getHitRect(outRect);
+        entry.anchor.getLocationOnScreen(mTempLocation);
+        outRect.offsetTo(mTempLocation[0], mTempLocation[1]);
+
+        if (null != entry.scrollParent) {
+            entry.scrollParent.getLocationOnScreen(mTempLocation);
+            entry.scrollParentX = mTempLocation[0];
+            entry.scrollParentY = mTempLocation[1];
+        }
+    }
+
+    /**
+     * Compute the anchor rect from the cached location of its scrolling parent, walking up
+     * the hierarchy only until the scrolling parent.
+     *
+     * @return false if the scrolling parent is no longer an ancestor of the anchor
+     */
+    private static boolean resolveFromScrollParent(final Entry entry, final Rect outRect) {
+        final View parent = entry.scrollParent;
+
+        // relative to the anchor parent
+        entry.anchor.getHitRect(outRect);
+
+        ViewParent current = entry.anchor.getParent();
+        int x = 0;
+        int y = 0;
+
+        while (current != parent) {
+            if (!(current instanceof View)) {
+                return false;
+            }
+            final View view = (View) current;
+            x += view.getLeft() + (int) view.getTranslationX() - view.getScrollX();
+            y += view.getTop() + (int) view.getTranslationY() - view.getScrollY();
+            current = view.getParent();
+        }
+
+        x += entry.scrollParentX - parent.getScrollX();
+        y += entry.scrollParentY - parent.getScrollY();
+        outRect.offset(x, y);
+        return true;
+    }
+
+    @Nullable
+    private static View findScrollParent(final View anchor) {
+        ViewParent parent = anchor.getParent();
+        while (parent instanceof View) {
+            if (parent instanceof ScrollingView
+                || parent instanceof ScrollView
+                || parent instanceof HorizontalScrollView
+                || parent instanceof AbsListView) {
+                return (View) parent;
+            }
+            parent = parent.getParent();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,101 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.support.annotation.Nullable;
+import android.text.Html;
+import android.text.Spanned;
+import android.text.SpannedString;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Process wide LRU cache of the parsed tooltip texts, from html markup to an immutable Spanned.<br />
+ * Texts which are already Spanned are used as they are.
+ */
+final class HtmlCache {
+    static final int DEFAULT_MAX_SIZE = 100;
+    private static final LinkedHashMap<String, Spanned> CACHE = new LinkedHashMap<String, Spanned>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Spanned> eldest) {
+            return size() > sMaxSize;
+        }
+    };
+    private static int sMaxSize = DEFAULT_MAX_SIZE;
+    private static int sHitCount;
+    private static int sMissCount;
+
+    private HtmlCache() { }
+
+    /**
+     * @param text the html text, or an already parsed Spanned
+     * @return the parsed text
+     */
+    @SuppressWarnings ("deprecation")
+    @Nullable
+    static CharSequence fromHtml(@Nullable final CharSequence text) {
+        if (null == text || text instanceof Spanned) {
+            return text;
+        }
+
+        final String markup = text.toString();
+
+        synchronized (CACHE) {
+            final Spanned result = CACHE.get(markup);
+            if (null != result) {
+                sHitCount++;
+                return result;
+            }
+            sMissCount++;
+        }
+
+        // parsed outside of the lock, the same markup could be parsed twice but nobody waits for it
+        final Spanned result = new SpannedString(Html.fromHtml(markup));
+
+        synchronized (CACHE) {
+            if (sMaxSize > 0) {
+                CACHE.put(markup, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param maxSize max number of cached texts, 0 disables the cache
+     */
+    static void setMaxSize(final int maxSize) {
+        synchronized (CACHE) {
+            sMaxSize = Math.max(0, maxSize);
+            trimToSize();
+        }
+    }
+
+    static int getMaxSize() {
+        synchronized (CACHE) {
+            return sMaxSize;
+        }
+    }
+
+    static int getHitCount() {
+        synchronized (CACHE) {
+            return sHitCount;
+        }
+    }
+
+    static int getMissCount() {
+        synchronized (CACHE) {
+            return sMissCount;
+        }
+    }
+
+    static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    private static void trimToSize() {
+        while (CACHE.size() > sMaxSize) {
+            CACHE.remove(CACHE.keySet().iterator().next());
+        }
+    }
+}
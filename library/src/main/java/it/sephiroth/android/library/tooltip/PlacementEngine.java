@@ -0,0 +1,394 @@
+package it.sephiroth.android.library.tooltip;
+
+/**
+ * Computes the tooltip position relative to its anchor.<br />
+ * Works only on primitive screen coordinates and gravity constants and writes into a reusable {@link Result},
+ * so it doesn't allocate anything per call and it doesn't depend on the android framework, not even on
+ * {@code Tooltip.Gravity}.
+ */
+final class PlacementEngine {
+    static final int LEFT = 0;
+    static final int RIGHT = 1;
+    static final int TOP = 2;
+    static final int BOTTOM = 3;
+    static final int CENTER = 4;
+    static final int NONE = -1;
+
+    private int mScreenLeft;
+    private int mScreenTop;
+    private int mScreenRight;
+    private int mScreenBottom;
+    private int mTopRule;
+    private int mTolerance;
+    private int mAnchorLeft;
+    private int mAnchorTop;
+    private int mAnchorRight;
+    private int mAnchorBottom;
+    private final Result mCandidate = new Result();
+
+    static final class Result {
+        int gravity = NONE;
+        int left;
+        int top;
+        int right;
+        int bottom;
+        int anchorX;
+        int anchorY;
+
+        void set(final int left, final int top, final int right, final int bottom) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+
+        void copyFrom(final Result other) {
+            gravity = other.gravity;
+            left = other.left;
+            top = other.top;
+            right = other.right;
+            bottom = other.bottom;
+            anchorX = other.anchorX;
+            anchorY = other.anchorY;
+        }
+
+        void offset(final int dx, final int dy) {
+            left += dx;
+            right += dx;
+            top += dy;
+            bottom += dy;
+        }
+
+        int width() {
+            return right - left;
+        }
+
+        int height() {
+            return bottom - top;
+        }
+
+        @Override
+        public String toString() {
+            return "Result(" + gravity + ", " + left + ", " + top + " - " + right + ", " + bottom + ")";
+        }
+    }
+
+    void setScreen(final int left, final int top, final int right, final int bottom) {
+        mScreenLeft = left;
+        mScreenTop = top;
+        mScreenRight = right;
+        mScreenBottom = bottom;
+    }
+
+    void setAnchor(final int left, final int top, final int right, final int bottom) {
+        mAnchorLeft = left;
+        mAnchorTop = top;
+        mAnchorRight = right;
+        mAnchorBottom = bottom;
+    }
+
+    /**
+     * @param topRule extra space reserved at the top of the screen (e.g. the actionbar)
+     */
+    void setTopRule(final int topRule) {
+        mTopRule = topRule;
+    }
+
+    /**
+     * @param tolerance pixels the tooltip is allowed to exceed the screen edges
+     */
+    void setTolerance(final int tolerance) {
+        mTolerance = tolerance;
+    }
+
+    /**
+     * Evaluate all the candidate gravities in a single pass and write the best one into <code>out</code>.<br />
+     * Candidates are scored by: whether they fit at all, the area clipped by the screen edges and
+     * their distance from the preferred gravity (the order in the array).
+     *
+     * @param gravities     the candidate gravities, in order of preference
+     * @param width         tooltip width
+     * @param height        tooltip height
+     * @param overlayWidth  horizontal space reserved for the overlay (ignored for CENTER)
+     * @param overlayHeight vertical space reserved for the overlay (ignored for CENTER)
+     * @param checkEdges    true to keep the tooltip within the screen edges
+     * @param out           the result
+     * @return false if none of the candidates fits
+     */
+    boolean choose(
+        final int[] gravities, final int width, final int height, final int overlayWidth, final int overlayHeight,
+        final boolean checkEdges, final Result out) {
+        boolean found = false;
+        long bestClipped = 0;
+
+        for (int gravity : gravities) {
+            final boolean center = gravity == CENTER;
+            if (!place(gravity, width, height, center ? 0 : overlayWidth, center ? 0 : overlayHeight, checkEdges, mCandidate)) {
+                continue;
+            }
+
+            final long clipped = checkEdges ? clippedArea(mCandidate) : 0;
+
+            // on equal score the earlier (preferred) gravity wins
+            if (!found || clipped < bestClipped) {
+                found = true;
+                bestClipped = clipped;
+                out.copyFrom(mCandidate);
+
+                if (clipped == 0) {
+                    // cannot do any better
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Position a tooltip of the given size on the given side of the anchor.
+     *
+     * @param gravity       the side of the anchor
+     * @param width         tooltip width
+     * @param height        tooltip height
+     * @param overlayWidth  horizontal space reserved for the overlay
+     * @param overlayHeight vertical space reserved for the overlay
+     * @param checkEdges    true to keep the tooltip within the screen edges
+     * @param out           the result
+     * @return false if there's not enough space on the requested side
+     */
+    boolean place(
+        final int gravity, final int width, final int height, final int overlayWidth, final int overlayHeight,
+        final boolean checkEdges, final Result out) {
+        out.gravity = gravity;
+
+        if (gravity == BOTTOM) {
+            return placeBottom(checkEdges, overlayHeight, width, height, out);
+        } else if (gravity == TOP) {
+            return placeTop(checkEdges, overlayHeight, width, height, out);
+        } else if (gravity == RIGHT) {
+            return placeRight(checkEdges, overlayWidth, width, height, out);
+        } else if (gravity == LEFT) {
+            return placeLeft(checkEdges, overlayWidth, width, height, out);
+        }
+        placeCenter(checkEdges, width, height, out);
+        return true;
+    }
+
+    /**
+     * Compute the arrow anchor point, relative to the tooltip rect.
+     *
+     * @param arrowPadding the padding to subtract from the arrow position, 0 if there's no arrow
+     */
+    void computeAnchorPoint(final int arrowPadding, final Result out) {
+        final int gravity = out.gravity;
+
+        if (gravity == BOTTOM) {
+            out.anchorX = anchorCenterX();
+            out.anchorY = mAnchorBottom;
+        } else if (gravity == TOP) {
+            out.anchorX = anchorCenterX();
+            out.anchorY = mAnchorTop;
+        } else if (gravity == RIGHT) {
+            out.anchorX = mAnchorRight;
+            out.anchorY = anchorCenterY();
+        } else if (gravity == LEFT) {
+            out.anchorX = mAnchorLeft;
+            out.anchorY = anchorCenterY();
+        } else {
+            out.anchorX = anchorCenterX();
+            out.anchorY = anchorCenterY();
+        }
+
+        out.anchorX -= out.left;
+        out.anchorY -= out.top;
+
+        if (gravity == LEFT || gravity == RIGHT) {
+            out.anchorY -= arrowPadding;
+        } else if (gravity == TOP || gravity == BOTTOM) {
+            out.anchorX -= arrowPadding;
+        }
+    }
+
+    private int anchorCenterX() {
+        return (mAnchorLeft + mAnchorRight) >> 1;
+    }
+
+    private int anchorCenterY() {
+        return (mAnchorTop + mAnchorBottom) >> 1;
+    }
+
+    private int anchorWidth() {
+        return mAnchorRight - mAnchorLeft;
+    }
+
+    private int anchorHeight() {
+        return mAnchorBottom - mAnchorTop;
+    }
+
+    private int screenTop() {
+        return mScreenTop + mTopRule;
+    }
+
+    /**
+     * @return the area of the given rect which lies outside the screen (tolerance included)
+     */
+    private long clippedArea(final Result rect) {
+        final int t = mTolerance;
+        final int left = Math.max(rect.left, mScreenLeft - t);
+        final int top = Math.max(rect.top, screenTop() - t);
+        final int right = Math.min(rect.right, mScreenRight + t);
+        final int bottom = Math.min(rect.bottom, mScreenBottom + t);
+
+        final long total = (long) rect.width() * rect.height();
+        if (right <= left || bottom <= top) {
+            return total;
+        }
+        return total - (long) (right - left) * (bottom - top);
+    }
+
+    private boolean containsWithTolerance(final Result rect) {
+        // same as Rect.contains, but without the android dependency
+        final int t = mTolerance;
+        return mScreenLeft < mScreenRight && mScreenTop < mScreenBottom
+            && rect.left + t >= mScreenLeft && rect.top + t >= mScreenTop
+            && rect.right - t <= mScreenRight && rect.bottom - t <= mScreenBottom;
+    }
+
+    private void placeCenter(final boolean checkEdges, final int width, final int height, final Result out) {
+        out.set(
+            anchorCenterX() - width / 2,
+            anchorCenterY() - height / 2,
+            anchorCenterX() + width / 2,
+            anchorCenterY() + height / 2
+        );
+
+        if (checkEdges && !containsWithTolerance(out)) {
+            if (out.bottom > mScreenBottom) {
+                out.offset(0, mScreenBottom - out.bottom);
+            } else if (out.top < screenTop()) {
+                out.offset(0, screenTop() - out.top);
+            }
+            if (out.right > mScreenRight) {
+                out.offset(mScreenRight - out.right, 0);
+            } else if (out.left < mScreenLeft) {
+                out.offset(mScreenLeft - out.left, 0);
+            }
+        }
+    }
+
+    private boolean placeLeft(
+        final boolean checkEdges, final int overlayWidth, final int width, final int height, final Result out) {
+        out.set(
+            mAnchorLeft - width,
+            anchorCenterY() - height / 2,
+            mAnchorLeft,
+            anchorCenterY() + height / 2
+        );
+
+        if ((anchorWidth() / 2) < overlayWidth) {
+            out.offset(-(overlayWidth - (anchorWidth() / 2)), 0);
+        }
+
+        if (checkEdges && !containsWithTolerance(out)) {
+            if (out.bottom > mScreenBottom) {
+                out.offset(0, mScreenBottom - out.bottom);
+            } else if (out.top < screenTop()) {
+                out.offset(0, screenTop() - out.top);
+            }
+            if (out.left < mScreenLeft) {
+                // this means there's no enough space!
+                return false;
+            } else if (out.right > mScreenRight) {
+                out.offset(mScreenRight - out.right, 0);
+            }
+        }
+        return true;
+    }
+
+    private boolean placeRight(
+        final boolean checkEdges, final int overlayWidth, final int width, final int height, final Result out) {
+        out.set(
+            mAnchorRight,
+            anchorCenterY() - height / 2,
+            mAnchorRight + width,
+            anchorCenterY() + height / 2
+        );
+
+        if ((anchorWidth() / 2) < overlayWidth) {
+            out.offset(overlayWidth - anchorWidth() / 2, 0);
+        }
+
+        if (checkEdges && !containsWithTolerance(out)) {
+            if (out.bottom > mScreenBottom) {
+                out.offset(0, mScreenBottom - out.bottom);
+            } else if (out.top < screenTop()) {
+                out.offset(0, screenTop() - out.top);
+            }
+            if (out.right > mScreenRight) {
+                // this means there's no enough space!
+                return false;
+            } else if (out.left < mScreenLeft) {
+                out.offset(mScreenLeft - out.left, 0);
+            }
+        }
+        return true;
+    }
+
+    private boolean placeTop(
+        final boolean checkEdges, final int overlayHeight, final int width, final int height, final Result out) {
+        out.set(
+            anchorCenterX() - width / 2,
+            mAnchorTop - height,
+            anchorCenterX() + width / 2,
+            mAnchorTop
+        );
+
+        if ((anchorHeight() / 2) < overlayHeight) {
+            out.offset(0, -(overlayHeight - (anchorHeight() / 2)));
+        }
+
+        if (checkEdges && !containsWithTolerance(out)) {
+            if (out.right > mScreenRight) {
+                out.offset(mScreenRight - out.right, 0);
+            } else if (out.left < mScreenLeft) {
+                out.offset(-out.left, 0);
+            }
+            if (out.top < screenTop()) {
+                // this means there's no enough space!
+                return false;
+            } else if (out.bottom > mScreenBottom) {
+                out.offset(0, mScreenBottom - out.bottom);
+            }
+        }
+        return true;
+    }
+
+    private boolean placeBottom(
+        final boolean checkEdges, final int overlayHeight, final int width, final int height, final Result out) {
+        out.set(
+            anchorCenterX() - width / 2,
+            mAnchorBottom,
+            anchorCenterX() + width / 2,
+            mAnchorBottom + height
+        );
+
+        if (anchorHeight() / 2 < overlayHeight) {
+            out.offset(0, overlayHeight - anchorHeight() / 2);
+        }
+
+        if (checkEdges && !containsWithTolerance(out)) {
+            if (out.right > mScreenRight) {
+                out.offset(mScreenRight - out.right, 0);
+            } else if (out.left < mScreenLeft) {
+                out.offset(-out.left, 0);
+            }
+            if (out.bottom > mScreenBottom) {
+                // this means there's no enough space!
+                return false;
+            } else if (out.top < screenTop()) {
+                out.offset(0, screenTop() - out.top);
+            }
+        }
+        return true;
+    }
+}
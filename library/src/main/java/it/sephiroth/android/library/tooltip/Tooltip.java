@@ -2,48 +2,50 @@ package it.sephiroth.android.library.tooltip;
 
 import android.animation.Animator;
 import android.animation.ObjectAnimator;
-import android.animation.ValueAnimator;
 import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
 import android.app.Activity;
 import android.content.Context;
 import android.content.res.ColorStateList;
 import android.content.res.Resources;
-import android.content.res.TypedArray;
 import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.os.Build;
-import android.os.Handler;
 import android.support.annotation.DimenRes;
+import android.support.annotation.LayoutRes;
+import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.StringRes;
-import android.text.Html;
+import android.support.annotation.StyleRes;
+import android.support.v4.view.ViewCompat;
+import android.text.TextPaint;
 import android.text.TextUtils;
+import android.text.style.TextAppearanceSpan;
+import android.util.Property;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewOutlineProvider;
 import android.view.ViewParent;
-import android.view.ViewTreeObserver;
 import android.view.WindowManager;
 import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.AnimationUtils;
+import android.view.animation.Interpolator;
 import android.widget.TextView;
 
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 import static android.util.Log.DEBUG;
 import static android.util.Log.ERROR;
 import static android.util.Log.INFO;
 import static android.util.Log.VERBOSE;
 import static android.util.Log.WARN;
-import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
 import static android.view.ViewGroup.LayoutParams.WRAP_CONTENT;
 import static it.sephiroth.android.library.tooltip.Tooltip.Gravity.BOTTOM;
 import static it.sephiroth.android.library.tooltip.Tooltip.Gravity.CENTER;
@@ -68,41 +70,209 @@ public final class Tooltip {
         return new TooltipViewImpl(context, builder);
     }
 
+    /**
+     * Remove the tooltip with the given id
+     *
+     * @return true if the tooltip was found and removed
+     */
     @SuppressWarnings ("unused")
     public static boolean remove(Context context, final int tooltipId) {
-        final Activity act = Utils.getActivity(context);
-        if (act != null) {
-            ViewGroup rootView;
-            rootView = (ViewGroup) (act.getWindow().getDecorView());
-            for (int i = 0; i < rootView.getChildCount(); i++) {
-                final View child = rootView.getChildAt(i);
-                if (child instanceof TooltipView) {
-                    if (((TooltipView) child).getTooltipId() == tooltipId) {
-                        log("Tooltip", VERBOSE, "removing: %d", ((TooltipView) child).getTooltipId());
-                        ((TooltipView) child).remove();
-                        return true;
-                    }
-                }
-            }
+        final TooltipHost host = getHost(context);
+        boolean removed = null != host && host.removeQueued(tooltipId) > 0;
+
+        final TooltipView tooltip = get(context, tooltipId);
+        if (null != tooltip) {
+            log("Tooltip", VERBOSE, "removing: %d", tooltip.getTooltipId());
+            tooltip.remove();
+            removed = true;
         }
-        return false;
+        return removed;
     }
 
+    /**
+     * Remove all the tooltips attached to the context Activity, and the ones waiting for the window budget
+     *
+     * @return true if at least one tooltip has been removed
+     */
     @SuppressWarnings ("unused")
     public static boolean removeAll(Context context) {
-        final Activity act = Utils.getActivity(context);
-        if (act != null) {
-            ViewGroup rootView;
-            rootView = (ViewGroup) (act.getWindow().getDecorView());
-            for (int i = rootView.getChildCount() - 1; i >= 0; i--) {
-                final View child = rootView.getChildAt(i);
-                if (child instanceof TooltipView) {
-                    log("Tooltip", VERBOSE, "removing: %d", ((TooltipView) child).getTooltipId());
-                    ((TooltipView) child).remove();
-                }
+        // the queue first, or removing the attached tooltips would promote the queued ones
+        final TooltipHost host = getHost(context);
+        final int queued = null != host ? host.removeAllQueued() : 0;
+
+        final TooltipRegistry registry = TooltipRegistry.get(context, false);
+        return (null != registry && registry.removeAll() > 0) || queued > 0;
+    }
+
+    @Nullable
+    private static TooltipHost getHost(final Context context) {
+        final Activity activity = Utils.getActivity(context);
+        return null != activity ? TooltipHost.get(activity, false) : null;
+    }
+
+    /**
+     * @return the tooltip with the given id attached to the context Activity, or waiting for its text or the
+     * window budget, or null
+     */
+    @SuppressWarnings ("unused")
+    @Nullable
+    public static TooltipView get(Context context, final int tooltipId) {
+        final TooltipRegistry registry = TooltipRegistry.get(context, false);
+        return null != registry ? registry.get(tooltipId) : null;
+    }
+
+    /**
+     * @return true if a tooltip with the given id is currently attached to the context Activity, or waiting
+     * for its text or the window budget
+     */
+    @SuppressWarnings ("unused")
+    public static boolean isShowing(Context context, final int tooltipId) {
+        return null != get(context, tooltipId);
+    }
+
+    /**
+     * Limit the number of tooltips shown at the same time in the context Activity window.
+     *
+     * @param maxVisible  max number of visible tooltips
+     * @param maxOverlays max number of visible tooltips with the animated overlay. Tooltips over the
+     *                    limit are shown without it
+     * @param policy      what to do with new tooltips when the max number of visible tooltips is reached
+     */
+    @SuppressWarnings ("unused")
+    public static void setBudget(
+        Context context, final int maxVisible, final int maxOverlays, @NonNull final BudgetPolicy policy) {
+        final Activity activity = Utils.getActivity(context);
+        if (null != activity) {
+            final TooltipHost host = TooltipHost.get(activity, true);
+            if (null != host) {
+                host.setBudget(Math.max(1, maxVisible), Math.max(0, maxOverlays), policy);
             }
         }
-        return false;
+    }
+
+    /**
+     * Set the max number of recycled tooltip contents and overlays kept for each layout and style
+     *
+     * @param capacity the pool capacity, 0 to disable recycling
+     */
+    @SuppressWarnings ("unused")
+    public static void setPoolCapacity(final int capacity) {
+        TooltipPool.setCapacity(capacity);
+    }
+
+    /**
+     * @return the number of tooltip contents and overlays reused from the pool
+     */
+    @SuppressWarnings ("unused")
+    public static int getPoolHitCount() {
+        return TooltipPool.getHitCount();
+    }
+
+    /**
+     * @return the number of tooltip contents and overlays which had to be created because the pool was empty
+     */
+    @SuppressWarnings ("unused")
+    public static int getPoolMissCount() {
+        return TooltipPool.getMissCount();
+    }
+
+    /**
+     * Inflate in background the content of {@code count} tooltips, so that the next tooltips created
+     * with the same context, style and layout don't need to inflate their layout when they're shown.<br />
+     * The number of prepared contents is limited by the pool capacity (see {@link #setPoolCapacity(int)}).
+     *
+     * @param context   the Activity context, the same one passed to {@link #make(Context, Builder)}
+     * @param styleRes  the tooltip style, as in {@link Builder#withStyleId(int)}, or 0 for the default style
+     * @param layoutRes the tooltip layout, as in {@link Builder#withCustomView(int)}, or 0 for the default layout
+     * @param count     number of tooltip contents to prepare
+     * @return the number of tooltip contents being inflated
+     */
+    @SuppressWarnings ("unused")
+    @MainThread
+    public static int prewarm(Context context, @StyleRes final int styleRes, @LayoutRes final int layoutRes, final int count) {
+        final TooltipRegistry registry = TooltipRegistry.get(context, true);
+        if (null == registry) {
+            log("Tooltip", WARN, "prewarm requires an Activity context");
+            return 0;
+        }
+
+        // only used to resolve the default style and layout, no need to consume an id
+        final Builder builder = new Builder(0);
+        if (styleRes != 0) {
+            builder.withStyleId(styleRes);
+        }
+        if (layoutRes != 0) {
+            builder.withCustomView(layoutRes);
+        }
+
+        return registry.getPool().prewarm(
+            new TooltipPool.Key(context, builder.textResId, builder.defStyleAttr, builder.defStyleRes, builder.isCustomView),
+            count
+        );
+    }
+
+    /**
+     * Set the max memory used by the cached tooltip backgrounds and shadows, see {@link Builder#cacheBackground(boolean)}
+     * and {@link Builder#softShadow(boolean)}. Tooltips which would exceed it draw their background as a path
+     * and no shadow.
+     *
+     * @param bytes the max size in bytes, 0 to disable the cache
+     */
+    @SuppressWarnings ("unused")
+    public static void setBackgroundCacheSize(final int bytes) {
+        TooltipBitmapCache.setMaxBytes(bytes);
+    }
+
+    /**
+     * @return the memory currently used by the cached tooltip backgrounds, in bytes
+     */
+    @SuppressWarnings ("unused")
+    public static int getBackgroundCacheBytes() {
+        return TooltipBitmapCache.getBytes();
+    }
+
+    /**
+     * Set the max number of parsed html texts kept in memory, shared by all the tooltips
+     *
+     * @param size the cache size, 0 to disable the cache
+     */
+    @SuppressWarnings ("unused")
+    public static void setTextCacheSize(final int size) {
+        HtmlCache.setMaxSize(size);
+    }
+
+    /**
+     * @return the number of tooltip texts found already parsed in the cache
+     */
+    @SuppressWarnings ("unused")
+    public static int getTextCacheHitCount() {
+        return HtmlCache.getHitCount();
+    }
+
+    /**
+     * @return the number of tooltip texts which had to be parsed
+     */
+    @SuppressWarnings ("unused")
+    public static int getTextCacheMissCount() {
+        return HtmlCache.getMissCount();
+    }
+
+    /**
+     * Count the pixels invalidated by the tooltips per frame. The count is also logged when {@link #dbg} is true.
+     * Meant for debugging only.
+     */
+    @SuppressWarnings ("unused")
+    public static void setInvalidationCounterEnabled(final boolean enabled) {
+        TooltipInvalidations.setEnabled(enabled);
+    }
+
+    /**
+     * @return the pixels invalidated by the tooltips during the last frame,
+     * see {@link #setInvalidationCounterEnabled(boolean)}
+     */
+    @SuppressWarnings ("unused")
+    public static long getInvalidatedPixels() {
+        return TooltipInvalidations.getLastFramePixels();
     }
 
     @SuppressWarnings ("unused")
@@ -177,6 +347,21 @@ public final class Tooltip {
         LEFT, RIGHT, TOP, BOTTOM, CENTER
     }
 
+    /**
+     * What happens to a new tooltip when the window budget is exhausted
+     */
+    public enum BudgetPolicy {
+        /**
+         * The tooltip waits, ordered by priority, until a visible tooltip is removed
+         */
+        QUEUE,
+        /**
+         * The tooltip replaces the visible tooltip with the lowest priority, if lower than its own,
+         * otherwise it's dropped and {@link Callback#onTooltipFailed(TooltipView)} is called
+         */
+        DROP
+    }
+
     @SuppressWarnings ("unused")
     public interface TooltipView {
         void show();
@@ -231,11 +416,33 @@ public final class Tooltip {
     }
 
     @SuppressLint ("ViewConstructor")
-    static class TooltipViewImpl extends ViewGroup implements TooltipView {
+    static class TooltipViewImpl extends ViewGroup implements TooltipView, TooltipQueue.Entry {
         public static final int TOLERANCE_VALUE = 10;
+        static final int DIRTY_ANCHOR = 1;
+        static final int DIRTY_SCREEN = 1 << 1;
+        static final int DIRTY_CONTENT = 1 << 2;
         private static final String TAG = "TooltipView";
-        private static final List<Gravity> GRAVITY_LIST = new ArrayList<>(Arrays.asList(LEFT, RIGHT, TOP, BOTTOM, CENTER));
-        private final List<Gravity> viewGravities = new ArrayList<>(GRAVITY_LIST);
+        private static final Gravity[] GRAVITY_LIST = {LEFT, RIGHT, TOP, BOTTOM, CENTER};
+        private static final Interpolator FLOATING_INTERPOLATOR = new AccelerateDecelerateInterpolator();
+
+        /**
+         * Fades the bubble and the overlay instead of the whole window sized tooltip view, so that
+         * only their bounds are invalidated
+         */
+        private static final Property<TooltipViewImpl, Float> CONTENT_ALPHA =
+            new Property<TooltipViewImpl, Float>(Float.class, "contentAlpha") {
+                @Override
+                public Float get(final TooltipViewImpl object) {
+                    return object.mContentAlpha;
+                }
+
+                @Override
+                public void set(final TooltipViewImpl object, final Float value) {
+                    object.setContentAlpha(value);
+                }
+            };
+        private final Gravity[] mGravities;
+        private final int[] mPlacementGravities;
         private final long mShowDelay;
         private final int mTextAppearance;
         private final int mTextGravity;
@@ -250,32 +457,76 @@ public final class Tooltip {
         private final boolean mHideArrow;
         private final long mActivateDelay;
         private final boolean mRestrict;
+        private final boolean mFollowScroll;
+        private final boolean mPrepareText;
+        private final boolean mCacheBackground;
+        private final boolean mSoftShadow;
+        private boolean mTextPrepared;
+        private TooltipTextPreparer.Task mPrepareTask;
+        private final TooltipTextPreparer.Callback mTextPreparedCallback = new TooltipTextPreparer.Callback() {
+            @Override
+            public void onTextPrepared(@NonNull final CharSequence text) {
+                log(TAG, VERBOSE, "[%d] onTextPrepared", mToolTipId);
+                mPrepareTask = null;
+                mText = text;
+                mTextPrepared = true;
+                if (mShowRequested) {
+                    show();
+                }
+            }
+        };
+        private boolean mShowRequested;
+        private final int mPriority;
+        private boolean mOverlayAllowed = true;
         private final long mFadeDuration;
-        private final TooltipTextDrawable mDrawable;
-        private final Rect mTempRect = new Rect();
+        private final TooltipPool.Key mContentKey;
+        private final TooltipPool.Key mOverlayKey;
+        private final boolean mHasOverlay;
+        private TooltipPool.Content mContent;
+        private TooltipTextDrawable mDrawable;
         private final int[] mTempLocation = new int[2];
-        private final Handler mHandler = new Handler();
+        private final TooltipTimer mTimer = TooltipTimer.get();
+        private final Object mTimerOwner;
         private final Rect mScreenRect = new Rect();
         private final Point mTmpPoint = new Point();
         private final Rect mHitRect = new Rect();
+        private final Rect mLayerBounds = new Rect();
+        private final Rect mTmpRect = new Rect();
+        private final PlacementEngine mPlacementEngine = new PlacementEngine();
+        private final PlacementEngine.Result mPlacement = new PlacementEngine.Result();
         private final float mTextViewElevation;
         private Callback mCallback;
-        private int[] mOldLocation;
+        private int mDirtyFlags;
+        private boolean mFrameScheduled;
+        private boolean mPlaced;
+        private final Rect mPlacedViewRect = new Rect();
+        private final Rect mPlacedScreenRect = new Rect();
+        private int mPlacedWidth;
+        private int mPlacedHeight;
         private Gravity mGravity;
         private Animator mShowAnimation;
+        private float mContentAlpha = 1;
         private boolean mShowing;
         private WeakReference<View> mViewAnchor;
         private boolean mAttached;
-        private final OnAttachStateChangeListener mAttachedStateListener = new OnAttachStateChangeListener() {
+        private AnchorTracker mAnchorTracker;
+        private TooltipRegistry mRegistry;
+        private final AnchorTracker.OnAnchorListener mAnchorListener = new AnchorTracker.OnAnchorListener() {
             @Override
-            public void onViewAttachedToWindow(final View v) {
+            public void onAnchorResolved(@Nullable final Rect rect, final boolean changed) {
+                if (changed && null != rect) {
+                    mViewRect.set(rect);
+                    mDirtyFlags |= DIRTY_ANCHOR;
+                }
+
+                // last chance to position the tooltip before this frame is drawn
+                flushPositions();
             }
 
             @Override
             @TargetApi (17)
-            public void onViewDetachedFromWindow(final View v) {
-                log(TAG, INFO, "[%d] onViewDetachedFromWindow", mToolTipId);
-                removeViewListeners(v);
+            public void onAnchorDetached() {
+                log(TAG, INFO, "[%d] onAnchorDetached", mToolTipId);
 
                 if (!mAttached) {
                     return;
@@ -295,126 +546,101 @@ public final class Tooltip {
                 }
             }
         };
-        private Runnable hideRunnable = new Runnable() {
-            @Override
-
-            public void run() {
-                onClose(false, false, false);
-            }
-        };
+        private final TooltipTimer.Timeout mHideTimeout = new TooltipTimer.Timeout(
+            new Runnable() {
+                @Override
+                public void run() {
+                    onClose(false, false, false);
+                }
+            });
         private boolean mInitialized;
         private boolean mActivated;
-        Runnable activateRunnable = new Runnable() {
-            @Override
-            public void run() {
-                mActivated = true;
-            }
-        };
+        private final TooltipTimer.Timeout mActivateTimeout = new TooltipTimer.Timeout(
+            new Runnable() {
+                @Override
+                public void run() {
+                    mActivated = true;
+                }
+            });
+        private final TooltipTimer.Timeout mShowTimeout = new TooltipTimer.Timeout(
+            new Runnable() {
+                @Override
+                public void run() {
+                    startShowAnimation(mFadeDuration);
+                }
+            });
+        private final TooltipTimer.Timeout mFadeEndTimeout = new TooltipTimer.Timeout(
+            new Runnable() {
+                @Override
+                public void run() {
+                    onRenderThreadFadeEnd();
+                }
+            });
+        private final TooltipTimer.Timeout mFloatingTimeout = new TooltipTimer.Timeout(
+            new Runnable() {
+                @Override
+                public void run() {
+                    if (mFloating && null != mTextView) {
+                        mFloatingForward = !mFloatingForward;
+                        startFloatingLeg();
+                    }
+                }
+            });
+        private boolean mFadeOnRenderThread;
+        private float mFadeFrom;
+        private long mFadeStartTime;
+        private long mFadeTime;
+        private boolean mFloatingOnRenderThread;
+        private boolean mFloatingForward;
         private int mPadding;
         private CharSequence mText;
         private Rect mViewRect;
         private View mView;
         private TooltipOverlay mViewOverlay;
-        private final ViewTreeObserver.OnPreDrawListener mPreDrawListener = new ViewTreeObserver.OnPreDrawListener() {
+        private final Runnable mFrameCallback = new Runnable() {
             @Override
-            public boolean onPreDraw() {
-                if (!mAttached) {
-                    removePreDrawObserver(null);
-                    return true;
-                }
-
-                if (null != mViewAnchor) {
-                    View view = mViewAnchor.get();
-                    if (null != view) {
-                        view.getLocationOnScreen(mTempLocation);
-
-                        if (mOldLocation == null) {
-                            mOldLocation = new int[]{mTempLocation[0], mTempLocation[1]};
-                        }
-
-                        if (mOldLocation[0] != mTempLocation[0] || mOldLocation[1] != mTempLocation[1]) {
-                            mView.setTranslationX(mTempLocation[0] - mOldLocation[0] + mView.getTranslationX());
-                            mView.setTranslationY(mTempLocation[1] - mOldLocation[1] + mView.getTranslationY());
-
-                            if (null != mViewOverlay) {
-                                mViewOverlay.setTranslationX(mTempLocation[0] - mOldLocation[0] + mViewOverlay.getTranslationX());
-                                mViewOverlay.setTranslationY(mTempLocation[1] - mOldLocation[1] + mViewOverlay.getTranslationY());
-                            }
-
-                        }
-
-                        mOldLocation[0] = mTempLocation[0];
-                        mOldLocation[1] = mTempLocation[1];
-                    }
-                }
-                return true;
+            public void run() {
+                mFrameScheduled = false;
+                flushPositions();
             }
         };
         private TextView mTextView;
         private Typeface mTypeface;
         private int mSizeTolerance;
-        private ValueAnimator mAnimator;
         private AnimationBuilder mFloatingAnimation;
-        private boolean mAlreadyCheck;
-        private final ViewTreeObserver.OnGlobalLayoutListener mGlobalLayoutListener =
-            new ViewTreeObserver.OnGlobalLayoutListener() {
-                @Override
-                public void onGlobalLayout() {
-                    if (!mAttached) {
-                        removeGlobalLayoutObserver(null);
-                        return;
-                    }
-
-                    if (null != mViewAnchor) {
-                        View view = mViewAnchor.get();
-
-                        if (null != view) {
-                            view.getHitRect(mTempRect);
-                            view.getLocationOnScreen(mTempLocation);
-
-                            if (dbg) {
-                                log(TAG, INFO, "[%d] onGlobalLayout(dirty: %b)", mToolTipId, view.isDirty());
-                                log(TAG, VERBOSE, "[%d] hitRect: %s, old: %s", mToolTipId, mTempRect, mHitRect);
-                            }
-
-                            if (!mTempRect.equals(mHitRect)) {
-                                mHitRect.set(mTempRect);
-
-                                mTempRect.offsetTo(mTempLocation[0], mTempLocation[1]);
-                                mViewRect.set(mTempRect);
-                                calculatePositions();
-                            }
-                        } else {
-                            if (dbg) {
-                                log(TAG, WARN, "[%d] view is null", mToolTipId);
-                            }
-                        }
-                    }
+        private TooltipClock mClock;
+        private boolean mFloating;
+        private boolean mFloatingVertical;
+        private long mFloatingStartTime;
+        private final TooltipClock.OnFrameListener mFloatingListener = new TooltipClock.OnFrameListener() {
+            @Override
+            public boolean onFrame(final long frameTime) {
+                if (!mFloating || null == mTextView) {
+                    return false;
                 }
-            };
-
+                updateFloatingAnimation(frameTime);
+                return true;
+            }
+        };
+        private boolean mAlreadyCheck;
         private boolean mIsCustomView;
 
         public TooltipViewImpl(Context context, final Builder builder) {
             super(context);
 
-            TypedArray theme =
-                context.getTheme()
-                    .obtainStyledAttributes(null, R.styleable.TooltipLayout, builder.defStyleAttr, builder.defStyleRes);
-            this.mPadding = theme.getDimensionPixelSize(R.styleable.TooltipLayout_ttlm_padding, 30);
-            this.mTextAppearance = theme.getResourceId(R.styleable.TooltipLayout_android_textAppearance, 0);
-            this.mTextGravity = theme
-                .getInt(R.styleable.TooltipLayout_android_gravity, android.view.Gravity.TOP | android.view.Gravity.START);
-            this.mTextViewElevation = theme.getDimension(R.styleable.TooltipLayout_ttlm_elevation, 0);
-            int overlayStyle = theme.getResourceId(R.styleable.TooltipLayout_ttlm_overlayStyle, R.style.ToolTipOverlayDefaultStyle);
-
-            String font = theme.getString(R.styleable.TooltipLayout_ttlm_font);
-
-            theme.recycle();
+            final TooltipStyle style = TooltipStyle.get(context, builder.defStyleAttr, builder.defStyleRes);
+            this.mPadding = style.padding;
+            this.mTextAppearance = style.textAppearance;
+            this.mTextGravity = style.textGravity;
+            this.mTextViewElevation = style.elevation;
+            final int overlayStyle = style.overlayStyle;
+            final String font = style.font;
 
             this.mToolTipId = builder.id;
             this.mText = builder.text;
             this.mGravity = builder.gravity;
+            this.mGravities = getGravities(builder.gravities, builder.gravity);
+            this.mPlacementGravities = toPlacementGravities(mGravities);
             this.mTextResId = builder.textResId;
             this.mMaxWidth = builder.maxWidth;
             this.mTopRule = builder.actionbarSize;
@@ -424,10 +650,19 @@ public final class Tooltip {
             this.mHideArrow = builder.hideArrow;
             this.mActivateDelay = builder.activateDelay;
             this.mRestrict = builder.restrictToScreenEdges;
+            this.mFollowScroll = builder.followScroll;
+            this.mPrepareText = builder.prepareText;
+            this.mCacheBackground = builder.cacheBackground;
+            this.mSoftShadow = builder.softShadow;
+            this.mPriority = builder.priority;
+            final Activity activity = Utils.getActivity(context);
+            this.mTimerOwner = null != activity ? activity : context;
             this.mFadeDuration = builder.fadeDuration;
             this.mCallback = builder.closeCallback;
             this.mFloatingAnimation = builder.floatingAnimation;
             this.mSizeTolerance = (int) (context.getResources().getDisplayMetrics().density * TOLERANCE_VALUE);
+            this.mPlacementEngine.setTolerance(mSizeTolerance);
+            this.mPlacementEngine.setTopRule(mTopRule);
 
             if (builder.typeface != null) {
                 mTypeface = builder.typeface;
@@ -457,42 +692,129 @@ public final class Tooltip {
                 mViewRect.offsetTo(mTempLocation[0], mTempLocation[1]);
 
                 mViewAnchor = new WeakReference<>(builder.view);
+            }
 
-                if (builder.view.getViewTreeObserver().isAlive()) {
-                    builder.view.getViewTreeObserver().addOnGlobalLayoutListener(mGlobalLayoutListener);
-                    builder.view.getViewTreeObserver().addOnPreDrawListener(mPreDrawListener);
-                    builder.view.addOnAttachStateChangeListener(mAttachedStateListener);
+            this.mHasOverlay = builder.overlay;
+            this.mIsCustomView = builder.isCustomView;
+            this.mContentKey =
+                new TooltipPool.Key(context, mTextResId, builder.defStyleAttr, builder.defStyleRes, builder.isCustomView);
+            this.mOverlayKey = new TooltipPool.Key(context, 0, 0, overlayStyle, false);
+            setVisibility(INVISIBLE);
+        }
+
+        /**
+         * The gravities to evaluate, in order of preference. Unless the caller provided its own order,
+         * the preferred gravity comes first, followed by the remaining ones.
+         */
+        private static Gravity[] getGravities(@Nullable final Gravity[] order, final Gravity gravity) {
+            if (null != order && order.length > 0) {
+                return order.clone();
+            } else if (null == gravity) {
+                return GRAVITY_LIST.clone();
+            }
+
+            Gravity[] result = new Gravity[GRAVITY_LIST.length];
+            int index = 0;
+            result[index++] = gravity;
+            for (Gravity item : GRAVITY_LIST) {
+                if (item != gravity) {
+                    result[index++] = item;
                 }
             }
+            return index == result.length ? result : Arrays.copyOf(result, index);
+        }
 
-            if (builder.overlay) {
-                mViewOverlay = new TooltipOverlay(getContext(), null, 0, overlayStyle);
-                mViewOverlay.setAdjustViewBounds(true);
-                mViewOverlay.setLayoutParams(new LayoutParams(WRAP_CONTENT, WRAP_CONTENT));
+        private static int[] toPlacementGravities(final Gravity[] gravities) {
+            final int[] result = new int[gravities.length];
+            for (int i = 0; i < gravities.length; i++) {
+                result[i] = toPlacementGravity(gravities[i]);
             }
+            return result;
+        }
 
-            if (!builder.isCustomView) {
-                this.mDrawable = new TooltipTextDrawable(context, builder);
-            } else {
-                this.mDrawable = null;
-                this.mIsCustomView = true;
+        /**
+         * @return the {@link PlacementEngine} constant of the given gravity
+         */
+        private static int toPlacementGravity(final Gravity gravity) {
+            switch (gravity) {
+                case LEFT:
+                    return PlacementEngine.LEFT;
+                case RIGHT:
+                    return PlacementEngine.RIGHT;
+                case TOP:
+                    return PlacementEngine.TOP;
+                case BOTTOM:
+                    return PlacementEngine.BOTTOM;
+                default:
+                    return PlacementEngine.CENTER;
+            }
+        }
+
+        private static Gravity fromPlacementGravity(final int gravity) {
+            switch (gravity) {
+                case PlacementEngine.LEFT:
+                    return LEFT;
+                case PlacementEngine.RIGHT:
+                    return RIGHT;
+                case PlacementEngine.TOP:
+                    return TOP;
+                case PlacementEngine.BOTTOM:
+                    return BOTTOM;
+                default:
+                    return CENTER;
             }
-            setVisibility(INVISIBLE);
         }
 
         @Override
         public void show() {
+            mShowRequested = true;
+            register();
+
             if (getParent() == null) {
+                if ((mPrepareText && !mTextPrepared && null != mText) || null != mPrepareTask) {
+                    // attached once the text is ready
+                    prepareText();
+                    return;
+                }
+
                 final Activity act = Utils.getActivity(getContext());
-                LayoutParams params = new LayoutParams(MATCH_PARENT, MATCH_PARENT);
                 if (act != null) {
-                    ViewGroup rootView;
-                    rootView = (ViewGroup) (act.getWindow().getDecorView());
-                    rootView.addView(this, params);
+                    final TooltipHost host = TooltipHost.get(act, true);
+                    if (null != host) {
+                        host.addTooltip(this);
+                    }
+                } else {
+                    log(TAG, WARN, "[%d] no activity to show into", mToolTipId);
+                    mShowRequested = false;
                 }
             }
         }
 
+        /**
+         * Registered from {@link #show()}, so that tooltips waiting for their text or for the window budget
+         * can be found and removed too
+         */
+        private void register() {
+            final TooltipRegistry registry = TooltipRegistry.get(getContext(), true);
+            if (null != registry) {
+                registry.add(this);
+            }
+        }
+
+        private void unregister() {
+            final TooltipRegistry registry = TooltipRegistry.get(getContext(), false);
+            if (null != registry) {
+                registry.remove(this);
+            }
+        }
+
+        /**
+         * @return false if the last {@link #show()} has been dropped, hidden or removed
+         */
+        boolean isShowRequested() {
+            return mShowRequested;
+        }
+
         @Override
         public void hide() {
             hide(mFadeDuration);
@@ -500,8 +822,12 @@ public final class Tooltip {
 
         private void hide(long fadeDuration) {
             log(TAG, INFO, "[%d] hide(%d)", mToolTipId, fadeDuration);
+            mShowRequested = false;
+            cancelTextPreparation();
 
             if (!isAttached()) {
+                removeQueued();
+                unregister();
                 return;
             }
             fadeOut(fadeDuration);
@@ -513,17 +839,21 @@ public final class Tooltip {
             }
 
             log(TAG, INFO, "[%d] fadeOut(%d)", mToolTipId, fadeDuration);
-
-            if (null != mShowAnimation) {
-                mShowAnimation.cancel();
-            }
+            mTimer.cancel(mShowTimeout);
+            cancelFade();
 
             mShowing = false;
 
             if (fadeDuration > 0) {
-                float alpha = getAlpha();
-                mShowAnimation = ObjectAnimator.ofFloat(this, "alpha", alpha, 0);
+                if (startRenderThreadFade(0, fadeDuration)) {
+                    return;
+                }
+
+                mShowAnimation = ObjectAnimator.ofFloat(this, CONTENT_ALPHA, mContentAlpha, 0);
                 mShowAnimation.setDuration(fadeDuration);
+                if (null != mView) {
+                    mShowAnimation.addListener(new TooltipLayers.LayerListener(mView));
+                }
                 mShowAnimation.addListener(
                     new Animator.AnimatorListener() {
                         boolean cancelled;
@@ -580,16 +910,115 @@ public final class Tooltip {
             }
         }
 
+        private void cancelFade() {
+            if (null != mShowAnimation) {
+                mShowAnimation.cancel();
+            }
+
+            if (mFadeOnRenderThread) {
+                mFadeOnRenderThread = false;
+                mTimer.cancel(mFadeEndTimeout);
+                if (null != mView) {
+                    TooltipRenderAnimator.cancel(mView);
+                    TooltipLayers.release(mView);
+                }
+            }
+        }
+
+        /**
+         * Fade the content on the render thread, where supported. The end of the fade is tracked with a timeout
+         *
+         * @return false if the fade must be run by an animator
+         */
+        private boolean startRenderThreadFade(final float alpha, final long duration) {
+            if (null == mView || !TooltipRenderAnimator.isSupported(mView)) {
+                return false;
+            }
+
+            mFadeOnRenderThread = true;
+            mFadeFrom = mContentAlpha;
+            mFadeStartTime = AnimationUtils.currentAnimationTimeMillis();
+            mFadeTime = duration;
+            mContentAlpha = alpha;
+            TooltipLayers.acquire(mView);
+            TooltipRenderAnimator.alpha(mView, alpha, duration);
+            TooltipInvalidations.record(mView);
+            if (null != mViewOverlay) {
+                // the host draws the rings with getRingsAlpha()
+                mViewOverlay.setAlpha(alpha);
+            }
+            mTimer.schedule(mFadeEndTimeout, duration, mTimerOwner);
+            return true;
+        }
+
+        private void onRenderThreadFadeEnd() {
+            mFadeOnRenderThread = false;
+            if (null != mView) {
+                TooltipLayers.release(mView);
+            }
+
+            if (mShowing) {
+                if (null != mCallback) {
+                    mCallback.onTooltipShown(TooltipViewImpl.this);
+                }
+                postActivate(mActivateDelay);
+            } else {
+                if (null != mCallback) {
+                    mCallback.onTooltipHidden(TooltipViewImpl.this);
+                }
+                remove();
+            }
+        }
+
         private void removeCallbacks() {
-            mHandler.removeCallbacks(hideRunnable);
-            mHandler.removeCallbacks(activateRunnable);
+            mTimer.cancel(mFadeEndTimeout);
+            mTimer.cancel(mHideTimeout);
+            mTimer.cancel(mActivateTimeout);
+            mTimer.cancel(mShowTimeout);
         }
 
         @Override
         public void remove() {
             log(TAG, INFO, "[%d] remove()", mToolTipId);
+            mShowRequested = false;
+            cancelTextPreparation();
             if (isAttached()) {
                 removeFromParent();
+            } else {
+                removeQueued();
+            }
+            unregister();
+        }
+
+        private void removeQueued() {
+            final Activity act = Utils.getActivity(getContext());
+            final TooltipHost host = null != act ? TooltipHost.get(act, false) : null;
+            if (null != host) {
+                host.removeQueued(this);
+            }
+        }
+
+        @Override
+        public int getPriority() {
+            return mPriority;
+        }
+
+        void setOverlayAllowed(final boolean allowed) {
+            mOverlayAllowed = allowed;
+        }
+
+        boolean hasOverlay() {
+            return null != mViewOverlay;
+        }
+
+        /**
+         * The window budget is exhausted and there's no tooltip with a lower priority to replace
+         */
+        void onDropped() {
+            mShowRequested = false;
+            unregister();
+            if (null != mCallback) {
+                mCallback.onTooltipFailed(this);
             }
         }
 
@@ -600,8 +1029,8 @@ public final class Tooltip {
 
         @Override
         public void offsetTo(final int x, final int y) {
-            mView.setTranslationX(x + mDrawRect.left);
-            mView.setTranslationY(y + mDrawRect.top);
+            mView.setTranslationX(x + mDrawRect.left - mLayerBounds.left);
+            mView.setTranslationY(y + mDrawRect.top - mLayerBounds.top);
         }
 
         @Override
@@ -617,7 +1046,7 @@ public final class Tooltip {
 
         @Override
         public void offsetXTo(final float x) {
-            mView.setTranslationX(x + mDrawRect.left);
+            mView.setTranslationX(x + mDrawRect.left - mLayerBounds.left);
         }
 
         @Override
@@ -656,123 +1085,217 @@ public final class Tooltip {
             log(TAG, INFO, "[%d] onAttachedToWindow", mToolTipId);
             super.onAttachedToWindow();
             mAttached = true;
+            mRegistry = TooltipRegistry.get(getContext(), true);
+            updateScreenRect();
+            subscribeAnchor();
+            initializeView();
+            showInternal();
+        }
+
+        private void updateScreenRect() {
             WindowManager wm = (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
             android.view.Display display = wm.getDefaultDisplay();
             display.getRectSize(mScreenRect);
-            initializeView();
-            showInternal();
         }
 
         @Override
         protected void onDetachedFromWindow() {
             log(TAG, INFO, "[%d] onDetachedFromWindow", mToolTipId);
+            final TooltipPool pool = null != mRegistry ? mRegistry.getPool() : null;
             removeListeners();
             stopFloatingAnimations();
+            cancelFade();
+            cancelPositions();
+            if (null != mRegistry) {
+                mRegistry.remove(this);
+                mRegistry = null;
+            }
             mAttached = false;
             mViewAnchor = null;
             super.onDetachedFromWindow();
+            recycleContent(pool);
+        }
+
+        /**
+         * Give back the inflated content and the overlay to the pool
+         */
+        private void recycleContent(@Nullable final TooltipPool pool) {
+            if (!mInitialized) {
+                return;
+            }
+
+            mInitialized = false;
+            mPlaced = false;
+            mLayerBounds.setEmpty();
+            removeAllViews();
+
+            if (null != mDrawable) {
+                mDrawable.releaseBitmapCache();
+            }
+
+            if (null != pool) {
+                pool.releaseContent(mContent);
+                if (null != mViewOverlay) {
+                    pool.releaseOverlay(mOverlayKey, mViewOverlay);
+                }
+            }
+
+            mContent = null;
+            mView = null;
+            mTextView = null;
+            mDrawable = null;
+            mViewOverlay = null;
         }
 
         @Override
         protected void onVisibilityChanged(@NonNull final View changedView, final int visibility) {
             super.onVisibilityChanged(changedView, visibility);
 
-            if (null != mAnimator) {
+            if (mFloating && mFloatingOnRenderThread) {
                 if (visibility == VISIBLE) {
-                    mAnimator.start();
+                    startFloatingLeg();
                 } else {
-                    mAnimator.cancel();
+                    cancelFloatingLeg();
+                }
+            } else if (mFloating && null != mClock) {
+                if (visibility == VISIBLE) {
+                    mClock.subscribe(mFloatingListener);
+                } else {
+                    mClock.unsubscribe(mFloatingListener);
                 }
             }
         }
 
+        /**
+         * The tooltip doesn't need an offscreen buffer to fade: the alpha is applied to the
+         * content (which has its own layer while animating) and to the overlay directly
+         */
+        @Override
+        public boolean hasOverlappingRendering() {
+            return false;
+        }
+
         @Override
         protected void onLayout(final boolean changed, final int l, final int t, final int r, final int b) {
             if (null != mView) {
-                mView.layout(mView.getLeft(), mView.getTop(), mView.getMeasuredWidth(), mView.getMeasuredHeight());
+                mView.layout(0, 0, mView.getMeasuredWidth(), mView.getMeasuredHeight());
+                TooltipLayers.onSizeChanged(mView);
+                TooltipLayers.onSizeChanged(mTextView);
             }
 
             if (null != mViewOverlay) {
-                mViewOverlay.layout(
-                    mViewOverlay.getLeft(),
-                    mViewOverlay.getTop(),
-                    mViewOverlay.getMeasuredWidth(),
-                    mViewOverlay.getMeasuredHeight()
-                );
+                mViewOverlay.layout(0, 0, mViewOverlay.getMeasuredWidth(), mViewOverlay.getMeasuredHeight());
             }
 
-            if (changed) {
-                if (mViewAnchor != null) {
-                    View view = mViewAnchor.get();
-                    if (null != view) {
-                        view.getHitRect(mTempRect);
-                        view.getLocationOnScreen(mTempLocation);
-                        mTempRect.offsetTo(mTempLocation[0], mTempLocation[1]);
-                        mViewRect.set(mTempRect);
-                    }
-                }
-                calculatePositions();
-            }
+            // the content size may have changed, placement is skipped if it didn't.
+            // Screen changes are notified by the host
+            invalidatePositions(DIRTY_CONTENT);
         }
 
-        private void removeListeners() {
-            mCallback = null;
+        /**
+         * Mark the tooltip position as dirty. Placement will happen at most once, on the next frame
+         * (or right before the current frame is drawn)
+         *
+         * @param flags what changed, any of DIRTY_ANCHOR, DIRTY_SCREEN and DIRTY_CONTENT
+         */
+        void invalidatePositions(final int flags) {
+            mDirtyFlags |= flags;
 
-            if (null != mViewAnchor) {
-                View view = mViewAnchor.get();
-                removeViewListeners(view);
+            if (!mFrameScheduled && mAttached) {
+                mFrameScheduled = true;
+                ViewCompat.postOnAnimation(this, mFrameCallback);
             }
         }
 
-        private void stopFloatingAnimations() {
-            if (null != mAnimator) {
-                mAnimator.cancel();
-                mAnimator = null;
+        private void cancelPositions() {
+            if (mFrameScheduled) {
+                mFrameScheduled = false;
+                removeCallbacks(mFrameCallback);
             }
+            mDirtyFlags = 0;
         }
 
-        private void removeViewListeners(final View view) {
-            log(TAG, INFO, "[%d] removeListeners", mToolTipId);
-            removeGlobalLayoutObserver(view);
-            removePreDrawObserver(view);
-            removeOnAttachStateObserver(view);
-        }
+        /**
+         * Run the placement, only if its inputs actually changed.
+         * The anchor rect is kept up to date by the AnchorTracker
+         */
+        private void flushPositions() {
+            if (mFrameScheduled) {
+                mFrameScheduled = false;
+                removeCallbacks(mFrameCallback);
+            }
 
-        @SuppressWarnings ("deprecation")
-        private void removeGlobalLayoutObserver(@Nullable View view) {
-            if (null == view && null != mViewAnchor) {
-                view = mViewAnchor.get();
+            if (!mAttached || null == mView || mDirtyFlags == 0) {
+                return;
             }
-            if (null != view && view.getViewTreeObserver().isAlive()) {
-                if (Build.VERSION.SDK_INT >= 16) {
-                    view.getViewTreeObserver().removeOnGlobalLayoutListener(mGlobalLayoutListener);
-                } else {
-                    view.getViewTreeObserver().removeGlobalOnLayoutListener(mGlobalLayoutListener);
-                }
-            } else {
-                log(TAG, ERROR, "[%d] removeGlobalLayoutObserver failed", mToolTipId);
+
+            final int flags = mDirtyFlags;
+            mDirtyFlags = 0;
+
+            if ((flags & DIRTY_SCREEN) != 0) {
+                updateScreenRect();
+            }
+
+            final int width = mView.getWidth();
+            final int height = mView.getHeight();
+
+            if (mPlaced
+                && width == mPlacedWidth
+                && height == mPlacedHeight
+                && mScreenRect.equals(mPlacedScreenRect)
+                && (null == mViewRect || mViewRect.equals(mPlacedViewRect))) {
+                return;
+            }
+
+            mPlaced = true;
+            mPlacedWidth = width;
+            mPlacedHeight = height;
+            mPlacedScreenRect.set(mScreenRect);
+            calculatePositions();
+
+            if (null != mViewRect) {
+                mPlacedViewRect.set(mViewRect);
             }
         }
 
-        private void removePreDrawObserver(@Nullable View view) {
-            if (null == view && null != mViewAnchor) {
-                view = mViewAnchor.get();
+        private void subscribeAnchor() {
+            final View anchor = null != mViewAnchor ? mViewAnchor.get() : null;
+
+            if (null != mViewAnchor && (null == anchor || !ViewCompat.isAttachedToWindow(anchor))) {
+                log(TAG, WARN, "[%d] anchor is not attached", mToolTipId);
+                return;
             }
-            if (null != view && view.getViewTreeObserver().isAlive()) {
-                view.getViewTreeObserver().removeOnPreDrawListener(mPreDrawListener);
-            } else {
-                log(TAG, ERROR, "[%d] removePreDrawObserver failed", mToolTipId);
+
+            mAnchorTracker = AnchorTracker.get(getRootView());
+            mAnchorTracker.subscribe(anchor, mAnchorListener, mViewRect, mFollowScroll);
+        }
+
+        private void removeListeners() {
+            mCallback = null;
+
+            if (null != mAnchorTracker) {
+                log(TAG, INFO, "[%d] removeListeners", mToolTipId);
+                mAnchorTracker.unsubscribe(null != mViewAnchor ? mViewAnchor.get() : null, mAnchorListener);
+                mAnchorTracker = null;
             }
         }
 
-        private void removeOnAttachStateObserver(@Nullable View view) {
-            if (null == view && null != mViewAnchor) {
-                view = mViewAnchor.get();
+        private void stopFloatingAnimations() {
+            if (!mFloating) {
+                return;
+            }
+
+            mFloating = false;
+            if (mFloatingOnRenderThread) {
+                mFloatingOnRenderThread = false;
+                cancelFloatingLeg();
             }
-            if (null != view) {
-                view.removeOnAttachStateChangeListener(mAttachedStateListener);
-            } else {
-                log(TAG, ERROR, "[%d] removeOnAttachStateObserver failed", mToolTipId);
+            if (null != mClock) {
+                mClock.unsubscribe(mFloatingListener);
+                mClock = null;
+            }
+            if (null != mTextView) {
+                TooltipLayers.release(mTextView);
             }
         }
 
@@ -785,12 +1308,24 @@ public final class Tooltip {
 
             log(TAG, VERBOSE, "[%d] initializeView", mToolTipId);
 
+            final TooltipPool pool = null != mRegistry ? mRegistry.getPool() : null;
+            mContent = null != pool ? pool.acquireContent(mContentKey) : null;
+
+            if (null == mContent) {
+                mContent = new TooltipPool.Content(
+                    mContentKey,
+                    LayoutInflater.from(getContext()).inflate(mTextResId, this, false),
+                    mIsCustomView ? null : new TooltipTextDrawable(getContext(), mContentKey.defStyleAttr, mContentKey.defStyleRes)
+                );
+            }
+
             LayoutParams params = new LayoutParams(WRAP_CONTENT, WRAP_CONTENT);
-            mView = LayoutInflater.from(getContext()).inflate(mTextResId, this, false);
+            mView = mContent.view;
             mView.setLayoutParams(params);
 
-            mTextView = (TextView) mView.findViewById(android.R.id.text1);
-            mTextView.setText(Html.fromHtml((String) this.mText));
+            mTextView = mContent.textView;
+            mDrawable = mContent.drawable;
+            mTextView.setText(HtmlCache.fromHtml(this.mText));
             if (mMaxWidth > -1) {
                 mTextView.setMaxWidth(mMaxWidth);
                 log(TAG, VERBOSE, "[%d] maxWidth: %d", mToolTipId, mMaxWidth);
@@ -807,6 +1342,8 @@ public final class Tooltip {
             }
 
             if (null != mDrawable) {
+                mDrawable.setBitmapCacheEnabled(mCacheBackground);
+                mDrawable.setShadowRadius(mSoftShadow && !mIsCustomView ? (int) mTextViewElevation : 0);
                 mTextView.setBackgroundDrawable(mDrawable);
                 if (mHideArrow) {
                     mTextView.setPadding(mPadding / 2, mPadding / 2, mPadding / 2, mPadding / 2);
@@ -815,16 +1352,89 @@ public final class Tooltip {
                 }
             }
             this.addView(mView);
+            mView.setAlpha(mContentAlpha);
 
-            if (null != mViewOverlay) {
+            if (mHasOverlay && mOverlayAllowed) {
+                mViewOverlay = null != pool ? pool.acquireOverlay(mOverlayKey) : null;
+
+                if (null == mViewOverlay) {
+                    mViewOverlay = new TooltipOverlay(getContext(), null, 0, mOverlayKey.defStyleRes);
+                    mViewOverlay.setAdjustViewBounds(true);
+                }
+                mViewOverlay.setLayoutParams(new LayoutParams(WRAP_CONTENT, WRAP_CONTENT));
                 this.addView(mViewOverlay);
+                mViewOverlay.setAlpha(mContentAlpha);
             }
 
-            if (!mIsCustomView && mTextViewElevation > 0 && Build.VERSION.SDK_INT >= 21) {
+            if (!mIsCustomView && !mSoftShadow && mTextViewElevation > 0 && Build.VERSION.SDK_INT >= 21) {
                 setupElevation();
             }
         }
 
+        /**
+         * Prepare what can be prepared before the tooltip is attached: the text is parsed and measured
+         * in background and the content layout is inflated in background into the Activity pool.
+         */
+        void prepare() {
+            if (isAttached()) {
+                return;
+            }
+
+            if (!mTextPrepared) {
+                prepareText();
+            }
+
+            final TooltipRegistry registry = TooltipRegistry.get(getContext(), true);
+            if (null != registry) {
+                registry.getPool().prewarm(mContentKey, 1);
+            }
+        }
+
+        void setCallback(@Nullable final Callback callback) {
+            mCallback = callback;
+        }
+
+        private void prepareText() {
+            if (null == mPrepareTask && null != mText) {
+                log(TAG, VERBOSE, "[%d] prepareText", mToolTipId);
+                mPrepareTask = TooltipTextPreparer.prepare(mText, createTextPaint(), getTextWidth(), mTextPreparedCallback);
+            }
+        }
+
+        private void cancelTextPreparation() {
+            if (null != mPrepareTask) {
+                mPrepareTask.cancel();
+                mPrepareTask = null;
+            }
+        }
+
+        /**
+         * @return the paint the TextView will use for the given text appearance, or null if there isn't one
+         */
+        @Nullable
+        private TextPaint createTextPaint() {
+            if (0 == mTextAppearance) {
+                return null;
+            }
+
+            final TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+            paint.density = getResources().getDisplayMetrics().density;
+            new TextAppearanceSpan(getContext(), mTextAppearance).updateMeasureState(paint);
+            if (null != mTypeface) {
+                paint.setTypeface(mTypeface);
+            }
+            return paint;
+        }
+
+        /**
+         * @return the max width available to the text, without the TextView padding
+         */
+        private int getTextWidth() {
+            final int padding = mIsCustomView ? 0 : (mHideArrow ? mPadding / 2 : mPadding);
+            final int width = mMaxWidth > 0 ? mMaxWidth : getResources().getDisplayMetrics().widthPixels;
+            return width - padding * 2;
+        }
+
         private void showInternal() {
             log(TAG, INFO, "[%d] show", mToolTipId);
             if (!isAttached()) {
@@ -845,19 +1455,40 @@ public final class Tooltip {
                 return;
             }
 
-            if (null != mShowAnimation) {
-                mShowAnimation.cancel();
-            }
+            cancelFade();
 
             log(TAG, INFO, "[%d] fadeIn", mToolTipId);
 
             mShowing = true;
 
+            if (this.mShowDelay > 0) {
+                mTimer.schedule(mShowTimeout, mShowDelay, mTimerOwner);
+            } else {
+                startShowAnimation(fadeDuration);
+            }
+
+            if (mShowDuration > 0) {
+                mTimer.schedule(mHideTimeout, mShowDuration, mTimerOwner);
+            }
+        }
+
+        private void startShowAnimation(final long fadeDuration) {
+            if (!isAttached() || !mShowing) {
+                return;
+            }
+
             if (fadeDuration > 0) {
-                mShowAnimation = ObjectAnimator.ofFloat(this, "alpha", 0, 1);
+                if (null != mView && TooltipRenderAnimator.isSupported(mView)) {
+                    setContentAlpha(0);
+                    setVisibility(View.VISIBLE);
+                    startRenderThreadFade(1, fadeDuration);
+                    return;
+                }
+
+                mShowAnimation = ObjectAnimator.ofFloat(this, CONTENT_ALPHA, 0, 1);
                 mShowAnimation.setDuration(fadeDuration);
-                if (this.mShowDelay > 0) {
-                    mShowAnimation.setStartDelay(this.mShowDelay);
+                if (null != mView) {
+                    mShowAnimation.addListener(new TooltipLayers.LayerListener(mView));
                 }
                 mShowAnimation.addListener(
                     new Animator.AnimatorListener() {
@@ -894,65 +1525,35 @@ public final class Tooltip {
                 );
                 mShowAnimation.start();
             } else {
+                setContentAlpha(1);
                 setVisibility(View.VISIBLE);
                 //            mTooltipListener.onShowCompleted(TooltipView.this);
                 if (!mActivated) {
                     postActivate(mActivateDelay);
                 }
             }
-
-            if (mShowDuration > 0) {
-                mHandler.removeCallbacks(hideRunnable);
-                mHandler.postDelayed(hideRunnable, mShowDuration);
-            }
         }
 
         void postActivate(long ms) {
             log(TAG, VERBOSE, "[%d] postActivate: %d", mToolTipId, ms);
             if (ms > 0) {
                 if (isAttached()) {
-                    mHandler.postDelayed(activateRunnable, ms);
+                    mTimer.schedule(mActivateTimeout, ms, mTimerOwner);
                 }
             } else {
                 mActivated = true;
             }
         }
 
-        private void calculatePositions() {
-            calculatePositions(mRestrict);
-        }
-
-        private void calculatePositions(boolean restrict) {
-            viewGravities.clear();
-            viewGravities.addAll(GRAVITY_LIST);
-            viewGravities.remove(mGravity);
-            viewGravities.add(0, mGravity);
-            calculatePositions(viewGravities, restrict);
-        }
-
         @SuppressWarnings ("checkstyle:cyclomaticcomplexity")
-        private void calculatePositions(List<Gravity> gravities, final boolean checkEdges) {
+        private void calculatePositions() {
             if (!isAttached()) {
                 return;
             }
 
-            // failed to display the tooltip due to
-            // something wrong with its dimensions or
-            // the target position..
-            if (gravities.size() < 1) {
-                if (null != mCallback) {
-                    mCallback.onTooltipFailed(this);
-                }
-                setVisibility(View.GONE);
-                return;
-            }
-
-            Gravity gravity = gravities.remove(0);
-
             if (dbg) {
                 log(TAG, DEBUG,
-                    "[%s] calculatePositions. gravity: %s, GRAVITY_LIST: %d, restrict: %b", mToolTipId, gravity,
-                    gravities.size(), checkEdges
+                    "[%s] calculatePositions. gravities: %s, restrict: %b", mToolTipId, Arrays.toString(mGravities), mRestrict
                 );
             }
 
@@ -961,7 +1562,7 @@ public final class Tooltip {
             final int overlayWidth;
             final int overlayHeight;
 
-            if (null != mViewOverlay && gravity != CENTER) {
+            if (null != mViewOverlay) {
                 int margin = mViewOverlay.getLayoutMargins();
                 overlayWidth = (mViewOverlay.getWidth() / 2) + margin;
                 overlayHeight = (mViewOverlay.getHeight() / 2) + margin;
@@ -975,41 +1576,26 @@ public final class Tooltip {
                 mViewRect.set(mPoint.x, mPoint.y + statusbarHeight, mPoint.x, mPoint.y + statusbarHeight);
             }
 
-            final int screenTop = mScreenRect.top + mTopRule;
-
-            int width = mView.getWidth();
-            int height = mView.getHeight();
+            mPlacementEngine.setScreen(mScreenRect.left, mScreenRect.top, mScreenRect.right, mScreenRect.bottom);
+            mPlacementEngine.setAnchor(mViewRect.left, mViewRect.top, mViewRect.right, mViewRect.bottom);
 
-            // get the destination mPoint
-
-            if (gravity == BOTTOM) {
-                if (calculatePositionBottom(checkEdges, overlayHeight, screenTop, width, height)) {
-                    log(TAG, WARN, "no enough space for BOTTOM");
-                    calculatePositions(gravities, checkEdges);
-                    return;
-                }
-            } else if (gravity == TOP) {
-                if (calculatePositionTop(checkEdges, overlayHeight, screenTop, width, height)) {
-                    log(TAG, WARN, "no enough space for TOP");
-                    calculatePositions(gravities, checkEdges);
-                    return;
-                }
-            } else if (gravity == RIGHT) {
-                if (calculatePositionRight(checkEdges, overlayWidth, screenTop, width, height)) {
-                    log(TAG, WARN, "no enough space for RIGHT");
-                    calculatePositions(gravities, checkEdges);
-                    return;
-                }
-            } else if (gravity == LEFT) {
-                if (calculatePositionLeft(checkEdges, overlayWidth, screenTop, width, height)) {
-                    log(TAG, WARN, "no enough space for LEFT");
-                    calculatePositions(gravities, checkEdges);
-                    return;
+            // failed to display the tooltip due to
+            // something wrong with its dimensions or
+            // the target position..
+            if (!mPlacementEngine.choose(
+                mPlacementGravities, mView.getWidth(), mView.getHeight(), overlayWidth, overlayHeight, mRestrict, mPlacement)) {
+                log(TAG, WARN, "[%d] no enough space for any gravity", mToolTipId);
+                if (null != mCallback) {
+                    mCallback.onTooltipFailed(this);
                 }
-            } else if (gravity == CENTER) {
-                calculatePositionCenter(checkEdges, screenTop, width, height);
+                setVisibility(View.GONE);
+                return;
             }
 
+            final Gravity gravity = fromPlacementGravity(mPlacement.gravity);
+
+            mDrawRect.set(mPlacement.left, mPlacement.top, mPlacement.right, mPlacement.bottom);
+
             if (dbg) {
                 log(TAG, VERBOSE, "[%d] mScreenRect: %s, mTopRule: %d, statusBar: %d", mToolTipId, mScreenRect, mTopRule,
                     statusbarHeight
@@ -1025,21 +1611,38 @@ public final class Tooltip {
 
                 if (gravity == CENTER && null != mViewOverlay) {
                     removeView(mViewOverlay);
+                    if (null != mRegistry) {
+                        mRegistry.getPool().releaseOverlay(mOverlayKey, mViewOverlay);
+                    }
                     mViewOverlay = null;
                 }
             }
 
             if (null != mViewOverlay) {
-                mViewOverlay.setTranslationX(mViewRect.centerX() - mViewOverlay.getWidth() / 2);
-                mViewOverlay.setTranslationY(mViewRect.centerY() - mViewOverlay.getHeight() / 2);
+                mViewOverlay.invalidateRings();
+            }
+
+            mTmpRect.set(mDrawRect);
+            final int overlayX = mViewRect.centerX() - (null != mViewOverlay ? mViewOverlay.getWidth() / 2 : 0);
+            final int overlayY = mViewRect.centerY() - (null != mViewOverlay ? mViewOverlay.getHeight() / 2 : 0);
+            if (null != mViewOverlay) {
+                mTmpRect.union(overlayX, overlayY, overlayX + mViewOverlay.getWidth(), overlayY + mViewOverlay.getHeight());
+            }
+            setLayerBounds(mTmpRect);
+
+            // bubble and overlay are positioned relative to the tooltip
+            if (null != mViewOverlay) {
+                mViewOverlay.setTranslationX(overlayX - mLayerBounds.left);
+                mViewOverlay.setTranslationY(overlayY - mLayerBounds.top);
+                mViewOverlay.invalidateRings();
             }
 
-            // translate the text view
-            mView.setTranslationX(mDrawRect.left);
-            mView.setTranslationY(mDrawRect.top);
+            mView.setTranslationX(mDrawRect.left - mLayerBounds.left);
+            mView.setTranslationY(mDrawRect.top - mLayerBounds.top);
 
             if (null != mDrawable) {
-                getAnchorPoint(gravity, mTmpPoint);
+                mPlacementEngine.computeAnchorPoint(mHideArrow ? 0 : mPadding / 2, mPlacement);
+                mTmpPoint.set(mPlacement.anchorX, mPlacement.anchorY);
                 mDrawable.setAnchor(gravity, mHideArrow ? 0 : mPadding / 2, mHideArrow ? null : mTmpPoint);
             }
 
@@ -1049,280 +1652,222 @@ public final class Tooltip {
             }
         }
 
-        private void calculatePositionCenter(final boolean checkEdges, final int screenTop, final int width, final int height) {
-            mDrawRect.set(
-                mViewRect.centerX() - width / 2,
-                mViewRect.centerY() - height / 2,
-                mViewRect.centerX() + width / 2,
-                mViewRect.centerY() + height / 2
-            );
+        /**
+         * Size the tooltip to the union of the bubble and the overlay, in host coordinates. A change of
+         * position only offsets the tooltip, a change of size lays it out again
+         */
+        private void setLayerBounds(final Rect bounds) {
+            mLayerBounds.set(bounds);
 
-            if (checkEdges && !Utils.rectContainsRectWithTolerance(mScreenRect, mDrawRect, mSizeTolerance)) {
-                if (mDrawRect.bottom > mScreenRect.bottom) {
-                    mDrawRect.offset(0, mScreenRect.bottom - mDrawRect.bottom);
-                } else if (mDrawRect.top < screenTop) {
-                    mDrawRect.offset(0, screenTop - mDrawRect.top);
-                }
-                if (mDrawRect.right > mScreenRect.right) {
-                    mDrawRect.offset(mScreenRect.right - mDrawRect.right, 0);
-                } else if (mDrawRect.left < mScreenRect.left) {
-                    mDrawRect.offset(mScreenRect.left - mDrawRect.left, 0);
-                }
+            if (getWidth() == bounds.width() && getHeight() == bounds.height()) {
+                offsetLeftAndRight(bounds.left - getLeft());
+                offsetTopAndBottom(bounds.top - getTop());
+            } else {
+                layout(bounds.left, bounds.top, bounds.right, bounds.bottom);
             }
         }
 
-        private boolean calculatePositionLeft(
-            final boolean checkEdges, final int overlayWidth, final int screenTop,
-            final int width, final int height) {
-            mDrawRect.set(
-                mViewRect.left - width,
-                mViewRect.centerY() - height / 2,
-                mViewRect.left,
-                mViewRect.centerY() + height / 2
-            );
+        /**
+         * @return where the host lays out the tooltip, empty until the first placement
+         */
+        Rect getLayerBounds() {
+            return mLayerBounds;
+        }
 
-            if ((mViewRect.width() / 2) < overlayWidth) {
-                mDrawRect.offset(-(overlayWidth - (mViewRect.width() / 2)), 0);
+        private void startFloatingAnimations() {
+            if (mTextView == mView || null == mFloatingAnimation) {
+                return;
             }
 
-            if (checkEdges && !Utils.rectContainsRectWithTolerance(mScreenRect, mDrawRect, mSizeTolerance)) {
-                if (mDrawRect.bottom > mScreenRect.bottom) {
-                    mDrawRect.offset(0, mScreenRect.bottom - mDrawRect.bottom);
-                } else if (mDrawRect.top < screenTop) {
-                    mDrawRect.offset(0, screenTop - mDrawRect.top);
-                }
-                if (mDrawRect.left < mScreenRect.left) {
-                    // this means there's no enough space!
-                    return true;
-                } else if (mDrawRect.right > mScreenRect.right) {
-                    mDrawRect.offset(mScreenRect.right - mDrawRect.right, 0);
-                }
+            final int direction;
+
+            if (mFloatingAnimation.direction == 0) {
+                direction = mGravity == TOP || mGravity == BOTTOM ? 2 : 1;
+            } else {
+                direction = mFloatingAnimation.direction;
             }
-            return false;
-        }
 
-        private boolean calculatePositionRight(
-            final boolean checkEdges, final int overlayWidth, final int screenTop,
-            final int width, final int height) {
-            mDrawRect.set(
-                mViewRect.right,
-                mViewRect.centerY() - height / 2,
-                mViewRect.right + width,
-                mViewRect.centerY() + height / 2
-            );
+            mFloatingVertical = direction == 2;
+            mFloatingStartTime = AnimationUtils.currentAnimationTimeMillis();
+            mFloating = true;
+            TooltipLayers.acquire(mTextView);
+            updateFloatingAnimation(mFloatingStartTime);
 
-            if ((mViewRect.width() / 2) < overlayWidth) {
-                mDrawRect.offset(overlayWidth - mViewRect.width() / 2, 0);
+            if (TooltipRenderAnimator.isSupported(mTextView)) {
+                mFloatingOnRenderThread = true;
+                mFloatingForward = true;
+                if (getVisibility() == VISIBLE) {
+                    startFloatingLeg();
+                }
+                return;
             }
 
-            if (checkEdges && !Utils.rectContainsRectWithTolerance(mScreenRect, mDrawRect, mSizeTolerance)) {
-                if (mDrawRect.bottom > mScreenRect.bottom) {
-                    mDrawRect.offset(0, mScreenRect.bottom - mDrawRect.bottom);
-                } else if (mDrawRect.top < screenTop) {
-                    mDrawRect.offset(0, screenTop - mDrawRect.top);
-                }
-                if (mDrawRect.right > mScreenRect.right) {
-                    // this means there's no enough space!
-                    return true;
-                } else if (mDrawRect.left < mScreenRect.left) {
-                    mDrawRect.offset(mScreenRect.left - mDrawRect.left, 0);
-                }
+            mClock = TooltipClock.get(getRootView());
+            if (getVisibility() == VISIBLE) {
+                mClock.subscribe(mFloatingListener);
             }
-            return false;
         }
 
-        private boolean calculatePositionTop(
-            final boolean checkEdges, final int overlayHeight, final int screenTop,
-            final int width, final int height) {
-            mDrawRect.set(
-                mViewRect.centerX() - width / 2,
-                mViewRect.top - height,
-                mViewRect.centerX() + width / 2,
-                mViewRect.top
-            );
-
-            if ((mViewRect.height() / 2) < overlayHeight) {
-                mDrawRect.offset(0, -(overlayHeight - (mViewRect.height() / 2)));
+        void setContentAlpha(final float alpha) {
+            mContentAlpha = alpha;
+            if (null != mView) {
+                mView.setAlpha(alpha);
+                TooltipInvalidations.record(mView);
             }
-
-            if (checkEdges && !Utils.rectContainsRectWithTolerance(mScreenRect, mDrawRect, mSizeTolerance)) {
-                if (mDrawRect.right > mScreenRect.right) {
-                    mDrawRect.offset(mScreenRect.right - mDrawRect.right, 0);
-                } else if (mDrawRect.left < mScreenRect.left) {
-                    mDrawRect.offset(-mDrawRect.left, 0);
-                }
-                if (mDrawRect.top < screenTop) {
-                    // this means there's no enough space!
-                    return true;
-                } else if (mDrawRect.bottom > mScreenRect.bottom) {
-                    mDrawRect.offset(0, mScreenRect.bottom - mDrawRect.bottom);
-                }
+            if (null != mViewOverlay) {
+                // the rings are drawn again by the next pulse frame
+                mViewOverlay.setAlpha(alpha);
             }
-            return false;
         }
 
-        private boolean calculatePositionBottom(
-            final boolean checkEdges, final int overlayHeight, final int screenTop,
-            final int width, final int height) {
-            mDrawRect.set(
-                mViewRect.centerX() - width / 2,
-                mViewRect.bottom,
-                mViewRect.centerX() + width / 2,
-                mViewRect.bottom + height
-            );
-
-            if (mViewRect.height() / 2 < overlayHeight) {
-                mDrawRect.offset(0, overlayHeight - mViewRect.height() / 2);
-            }
-
-            if (checkEdges && !Utils.rectContainsRectWithTolerance(mScreenRect, mDrawRect, mSizeTolerance)) {
-                if (mDrawRect.right > mScreenRect.right) {
-                    mDrawRect.offset(mScreenRect.right - mDrawRect.right, 0);
-                } else if (mDrawRect.left < mScreenRect.left) {
-                    mDrawRect.offset(-mDrawRect.left, 0);
-                }
-                if (mDrawRect.bottom > mScreenRect.bottom) {
-                    // this means there's no enough space!
-                    return true;
-                } else if (mDrawRect.top < screenTop) {
-                    mDrawRect.offset(0, screenTop - mDrawRect.top);
-                }
+        /**
+         * Called by the host right after the tooltip has been drawn
+         */
+        void drawRings(@NonNull final Canvas canvas) {
+            if (null != mViewOverlay && getVisibility() == VISIBLE && mViewOverlay.getVisibility() == VISIBLE) {
+                mViewOverlay.drawRings(canvas, getRingsAlpha());
             }
-            return false;
         }
 
-        private void startFloatingAnimations() {
-            if (mTextView == mView || null == mFloatingAnimation) {
-                return;
+        /**
+         * A render thread fade doesn't update the alpha seen by the main thread, so while it's running the
+         * alpha of the rings is computed from the fade timeline
+         */
+        private float getRingsAlpha() {
+            if (!mFadeOnRenderThread) {
+                return mContentAlpha;
             }
+            final long elapsed = AnimationUtils.currentAnimationTimeMillis() - mFadeStartTime;
+            final float fraction = Math.min(1f, (float) elapsed / Math.max(1, mFadeTime));
+            return mFadeFrom + (mContentAlpha - mFadeFrom) * TooltipRenderAnimator.getInterpolation(fraction);
+        }
 
-            final float endValue = mFloatingAnimation.radius;
-            final long duration = mFloatingAnimation.duration;
-
-            final int direction;
-
-            if (mFloatingAnimation.direction == 0) {
-                direction = mGravity == TOP || mGravity == BOTTOM ? 2 : 1;
+        /**
+         * Move the text view to one end on the render thread, the next leg is started by {@link #mFloatingTimeout}
+         */
+        private void startFloatingLeg() {
+            final long duration = Math.max(1, mFloatingAnimation.duration);
+            final float value = mFloatingForward ? mFloatingAnimation.radius : -mFloatingAnimation.radius;
+            if (mFloatingVertical) {
+                TooltipInvalidations.recordTranslation(mTextView, 0, value - mTextView.getTranslationY());
             } else {
-                direction = mFloatingAnimation.direction;
+                TooltipInvalidations.recordTranslation(mTextView, value - mTextView.getTranslationX(), 0);
             }
-
-            final String property = direction == 2 ? "translationY" : "translationX";
-            mAnimator = ObjectAnimator.ofFloat(mTextView, property, -endValue, endValue);
-            mAnimator.setDuration(duration);
-            mAnimator.setInterpolator(new AccelerateDecelerateInterpolator());
-
-            mAnimator.setRepeatCount(ValueAnimator.INFINITE);
-            mAnimator.setRepeatMode(ValueAnimator.REVERSE);
-
-            mAnimator.start();
+            TooltipRenderAnimator.translation(mTextView, mFloatingVertical, value, duration);
+            mTimer.schedule(mFloatingTimeout, duration, mTimerOwner);
         }
 
-        void getAnchorPoint(final Gravity gravity, Point outPoint) {
-
-            if (gravity == BOTTOM) {
-                outPoint.x = mViewRect.centerX();
-                outPoint.y = mViewRect.bottom;
-            } else if (gravity == TOP) {
-                outPoint.x = mViewRect.centerX();
-                outPoint.y = mViewRect.top;
-            } else if (gravity == RIGHT) {
-                outPoint.x = mViewRect.right;
-                outPoint.y = mViewRect.centerY();
-            } else if (gravity == LEFT) {
-                outPoint.x = mViewRect.left;
-                outPoint.y = mViewRect.centerY();
-            } else if (this.mGravity == CENTER) {
-                outPoint.x = mViewRect.centerX();
-                outPoint.y = mViewRect.centerY();
+        private void cancelFloatingLeg() {
+            mTimer.cancel(mFloatingTimeout);
+            if (null != mTextView) {
+                TooltipRenderAnimator.cancel(mTextView);
             }
+        }
 
-            outPoint.x -= mDrawRect.left;
-            outPoint.y -= mDrawRect.top;
-
-            if (!mHideArrow) {
-                if (gravity == LEFT || gravity == RIGHT) {
-                    outPoint.y -= mPadding / 2;
-                } else if (gravity == TOP || gravity == BOTTOM) {
-                    outPoint.x -= mPadding / 2;
-                }
+        /**
+         * Move the text view back and forth between -radius and radius, driven by the window clock
+         */
+        private void updateFloatingAnimation(final long frameTime) {
+            final long duration = Math.max(1, mFloatingAnimation.duration);
+            final long elapsed = Math.max(0, frameTime - mFloatingStartTime);
+            float fraction = (float) (elapsed % duration) / duration;
+            if ((elapsed / duration) % 2 == 1) {
+                fraction = 1f - fraction;
+            }
+
+            final float radius = mFloatingAnimation.radius;
+            final float value = -radius + radius * 2 * FLOATING_INTERPOLATOR.getInterpolation(fraction);
+            if (mFloatingVertical) {
+                TooltipInvalidations.recordTranslation(mTextView, 0, value - mTextView.getTranslationY());
+                mTextView.setTranslationY(value);
+            } else {
+                TooltipInvalidations.recordTranslation(mTextView, value - mTextView.getTranslationX(), 0);
+                mTextView.setTranslationX(value);
             }
         }
 
         @Override
         public void setText(final CharSequence text) {
             this.mText = text;
+            this.mTextPrepared = false;
+
+            if (null != mPrepareTask) {
+                // restart the preparation with the new text
+                cancelTextPreparation();
+                if (mShowRequested) {
+                    show();
+                } else {
+                    prepareText();
+                }
+            }
+
             if (null != mTextView) {
-                mTextView.setText(Html.fromHtml((String) text));
+                mTextView.setText(HtmlCache.fromHtml(text));
             }
         }
 
-        @SuppressWarnings ("checkstyle:cyclomaticcomplexity")
         @Override
         public boolean onTouchEvent(@NonNull final MotionEvent event) {
-            if (!mAttached || !mShowing || !isShown() || mClosePolicy == ClosePolicy.NONE) {
+            return event.getActionMasked() == MotionEvent.ACTION_DOWN && onTouchDown(containsTouch(event.getX(), event.getY()));
+        }
+
+        /**
+         * The host offers the down events outside of the bubble and the overlay through this method,
+         * without dispatching them
+         *
+         * @return true if the event is consumed
+         */
+        boolean onTouchOutside() {
+            return onTouchDown(false);
+        }
+
+        /**
+         * @return true if the point, in the tooltip coordinates, is over the bubble or the overlay
+         */
+        boolean containsTouch(final float x, final float y) {
+            return contains(mView, x, y) || contains(mViewOverlay, x, y);
+        }
+
+        private static boolean contains(@Nullable final View view, final float x, final float y) {
+            if (null == view) {
                 return false;
             }
+            final float left = view.getLeft() + view.getTranslationX();
+            final float top = view.getTop() + view.getTranslationY();
+            return x >= left && x < left + view.getWidth() && y >= top && y < top + view.getHeight();
+        }
 
-            final int action = event.getActionMasked();
+        private boolean onTouchDown(final boolean containsTouch) {
+            if (!mAttached || !mShowing || !isShown() || mClosePolicy == ClosePolicy.NONE) {
+                return false;
+            }
 
-            log(TAG, INFO, "[%d] onTouchEvent: %d, active: %b", mToolTipId, action, mActivated);
+            log(TAG, INFO, "[%d] onTouchDown, containsTouch: %b, active: %b", mToolTipId, containsTouch, mActivated);
 
             if (!mActivated && mActivateDelay > 0) {
                 log(TAG, WARN, "[%d] not yet activated...", mToolTipId);
-                //onClose(true, false, true);
                 return false;
             }
 
-            if (action == MotionEvent.ACTION_DOWN) {
-
-                Rect outRect = new Rect();
-                mView.getGlobalVisibleRect(outRect);
-                log(TAG, VERBOSE, "[%d] text rect: %s", mToolTipId, outRect);
-
-                boolean containsTouch = outRect.contains((int) event.getX(), (int) event.getY());
-                log(TAG, VERBOSE, "containsTouch: %b", containsTouch);
-
-                if (null != mViewOverlay) {
-                    mViewOverlay.getGlobalVisibleRect(outRect);
-                    containsTouch |= outRect.contains((int) event.getX(), (int) event.getY());
-                    log(TAG, VERBOSE, "[%d] overlay rect: %s", mToolTipId, outRect);
-                }
-
-                if (dbg) {
-                    log(TAG, VERBOSE, "[%d] containsTouch: %b", mToolTipId, containsTouch);
-                    log(TAG, VERBOSE, "[%d] mDrawRect: %s, point: %g, %g", mToolTipId, mDrawRect, event.getX(), event.getY());
-                    log(
-                        TAG,
-                        VERBOSE, "[%d] real drawing rect: %s, contains: %b", mToolTipId, outRect,
-                        outRect.contains((int) event.getX(), (int) event.getY())
-                    );
-                }
-
-                if (dbg) {
-                    log(TAG, DEBUG, "containsTouch: %b", containsTouch);
-
-                    log(TAG, DEBUG, "touchOutside: %b", ClosePolicy.touchOutside(mClosePolicy));
-                    log(TAG, DEBUG, "consumeOutside: %b", ClosePolicy.consumeOutside(mClosePolicy));
-
-                    log(TAG, DEBUG, "touchInside: %b", ClosePolicy.touchInside(mClosePolicy));
-                    log(TAG, DEBUG, "consumeInside: %b", ClosePolicy.consumeInside(mClosePolicy));
-                }
+            if (dbg) {
+                log(TAG, DEBUG, "touchOutside: %b", ClosePolicy.touchOutside(mClosePolicy));
+                log(TAG, DEBUG, "consumeOutside: %b", ClosePolicy.consumeOutside(mClosePolicy));
 
-                if (containsTouch) {
-                    if (ClosePolicy.touchInside(mClosePolicy)) {
-                        onClose(true, true, false);
-                    }
-                    return ClosePolicy.consumeInside(mClosePolicy);
-                }
+                log(TAG, DEBUG, "touchInside: %b", ClosePolicy.touchInside(mClosePolicy));
+                log(TAG, DEBUG, "consumeInside: %b", ClosePolicy.consumeInside(mClosePolicy));
+            }
 
-                if (ClosePolicy.touchOutside(mClosePolicy)) {
-                    onClose(true, false, false);
+            if (containsTouch) {
+                if (ClosePolicy.touchInside(mClosePolicy)) {
+                    onClose(true, true, false);
                 }
-                return ClosePolicy.consumeOutside(mClosePolicy);
+                return ClosePolicy.consumeInside(mClosePolicy);
+            }
 
+            if (ClosePolicy.touchOutside(mClosePolicy)) {
+                onClose(true, false, false);
             }
-            return false;
+            return ClosePolicy.consumeOutside(mClosePolicy);
         }
 
         @Override
@@ -1333,51 +1878,26 @@ public final class Tooltip {
             super.onDraw(canvas);
         }
 
+        /**
+         * The content is measured against the host size, the tooltip itself is as big as the bubble and the
+         * overlay, see {@link #getLayerBounds()}
+         */
         @Override
         protected void onMeasure(final int widthMeasureSpec, final int heightMeasureSpec) {
-            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
-
-            int myWidth = 0;
-            int myHeight = 0;
-
-            final int widthMode = MeasureSpec.getMode(widthMeasureSpec);
-            final int heightMode = MeasureSpec.getMode(heightMeasureSpec);
-            int widthSize = MeasureSpec.getSize(widthMeasureSpec);
-            int heightSize = MeasureSpec.getSize(heightMeasureSpec);
-
-            // Record our dimensions if they are known;
-            if (widthMode != MeasureSpec.UNSPECIFIED) {
-                myWidth = widthSize;
-            }
-
-            if (heightMode != MeasureSpec.UNSPECIFIED) {
-                myHeight = heightSize;
-            }
+            final int childWidthMeasureSpec =
+                MeasureSpec.makeMeasureSpec(MeasureSpec.getSize(widthMeasureSpec), MeasureSpec.AT_MOST);
+            final int childHeightMeasureSpec =
+                MeasureSpec.makeMeasureSpec(MeasureSpec.getSize(heightMeasureSpec), MeasureSpec.AT_MOST);
 
-            log(TAG, VERBOSE, "[%d] onMeasure myWidth: %d, myHeight: %d", mToolTipId, myWidth, myHeight);
-
-            if (null != mView) {
-                if (mView.getVisibility() != GONE) {
-                    int childWidthMeasureSpec = MeasureSpec.makeMeasureSpec(myWidth, MeasureSpec.AT_MOST);
-                    int childHeightMeasureSpec = MeasureSpec.makeMeasureSpec(myHeight, MeasureSpec.AT_MOST);
-                    mView.measure(childWidthMeasureSpec, childHeightMeasureSpec);
-                } else {
-                    myWidth = 0;
-                    myHeight = 0;
-                }
+            if (null != mView && mView.getVisibility() != GONE) {
+                mView.measure(childWidthMeasureSpec, childHeightMeasureSpec);
             }
 
             if (null != mViewOverlay && mViewOverlay.getVisibility() != GONE) {
-
-                final int childWidthMeasureSpec;
-                final int childHeightMeasureSpec;
-                childWidthMeasureSpec = MeasureSpec.makeMeasureSpec(widthSize, MeasureSpec.AT_MOST);
-                childHeightMeasureSpec = MeasureSpec.makeMeasureSpec(heightSize, MeasureSpec.AT_MOST);
                 mViewOverlay.measure(childWidthMeasureSpec, childHeightMeasureSpec);
-
             }
 
-            setMeasuredDimension(myWidth, myHeight);
+            setMeasuredDimension(mLayerBounds.width(), mLayerBounds.height());
         }
 
         private void onClose(boolean fromUser, boolean containsTouch, boolean immediate) {
@@ -1477,6 +1997,12 @@ public final class Tooltip {
         boolean overlay = true;
         AnimationBuilder floatingAnimation;
         Typeface typeface;
+        Gravity[] gravities;
+        boolean followScroll;
+        boolean prepareText;
+        boolean cacheBackground;
+        boolean softShadow;
+        int priority;
 
         public Builder(int id) {
             this.id = id;
@@ -1593,6 +2119,80 @@ public final class Tooltip {
             return this;
         }
 
+        /**
+         * Follow the anchor using the scroll deltas of its nearest scrolling parent (ScrollView, ListView,
+         * RecyclerView, NestedScrollView...) instead of querying its location on screen at every frame.
+         * A full location query is still done after every layout pass.<br />
+         * Use it for anchors inside scrolling containers which don't move in any other way.
+         *
+         * @param value true to enable, false by default
+         * @return the builder for chaining.
+         */
+        @SuppressWarnings ("unused")
+        public Builder followScrollingParent(boolean value) {
+            throwIfCompleted();
+            this.followScroll = value;
+            return this;
+        }
+
+        /**
+         * Parse the html text and lay it out on a background thread before showing the tooltip.
+         * The tooltip is attached to the window only once the text is ready, so {@link TooltipView#show()}
+         * returns immediately and the tooltip appears a few frames later.
+         *
+         * @param value true to enable, false by default
+         * @return the builder for chaining.
+         */
+        @SuppressWarnings ("unused")
+        public Builder prepareTextInBackground(boolean value) {
+            throwIfCompleted();
+            this.prepareText = value;
+            return this;
+        }
+
+        /**
+         * Draw the bubble body from a stretchable bitmap, rendered once per style and shared by all the tooltips
+         * with that style whatever their size, and only the arrow as a path. Ignored when the background color
+         * isn't opaque, see {@link Tooltip#setBackgroundCacheSize(int)}.
+         *
+         * @param value true to enable, false by default
+         * @return the builder for chaining.
+         */
+        @SuppressWarnings ("unused")
+        public Builder cacheBackground(boolean value) {
+            throwIfCompleted();
+            this.cacheBackground = value;
+            return this;
+        }
+
+        /**
+         * Draw the ttlm_elevation shadow as a blurred bitmap instead of using the platform elevation, which
+         * only works on API 21+. Shadows are rendered once per style and blur radius and shared by the tooltips,
+         * see {@link Tooltip#setBackgroundCacheSize(int)}. Ignored for custom views.
+         *
+         * @param value true to enable, false by default
+         * @return the builder for chaining.
+         */
+        @SuppressWarnings ("unused")
+        public Builder softShadow(boolean value) {
+            throwIfCompleted();
+            this.softShadow = value;
+            return this;
+        }
+
+        /**
+         * Priority used when the window budget is exhausted, see {@link Tooltip#setBudget(Context, int, int, BudgetPolicy)}
+         *
+         * @param priority higher values win, 0 by default
+         * @return the builder for chaining.
+         */
+        @SuppressWarnings ("unused")
+        public Builder priority(int priority) {
+            throwIfCompleted();
+            this.priority = priority;
+            return this;
+        }
+
         @SuppressWarnings ("unused")
         public Builder anchor(final Point point, final Gravity gravity) {
             throwIfCompleted();
@@ -1602,6 +2202,21 @@ public final class Tooltip {
             return this;
         }
 
+        /**
+         * Set the order in which the gravities are evaluated when there's no enough space
+         * for the tooltip. The first one which fits with the least clipping wins.<br />
+         * By default the anchor gravity comes first, followed by LEFT, RIGHT, TOP, BOTTOM and CENTER.
+         *
+         * @param gravities the gravities, in order of preference
+         * @return the builder for chaining.
+         */
+        @SuppressWarnings ("unused")
+        public Builder preferredGravities(Gravity... gravities) {
+            throwIfCompleted();
+            this.gravities = gravities;
+            return this;
+        }
+
         /**
          * @deprecated use {#withArrow} instead
          */
@@ -0,0 +1,149 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+
+import static android.util.Log.VERBOSE;
+import static android.util.Log.WARN;
+import static it.sephiroth.android.library.tooltip.Utils.log;
+
+/**
+ * Stretchable bubble bodies, one per style and shape, shared by all the {@link TooltipTextDrawable} with
+ * that style whatever their size, and blurred shadows, one per style and blur radius.<br />
+ * The style is the drawable constant state, so bitmaps are shared only by drawables resolved from the same
+ * theme and with the same paints. The cache is cleared with the styles when the configuration changes.<br />
+ * Entries are reference counted. Unused entries are kept until their memory is needed by a new one. The memory
+ * used by the bitmaps is accounted for: when a new bitmap would exceed the max size, no bitmap is created and the
+ * drawable falls back to drawing its path.
+ */
+final class TooltipBitmapCache {
+    private static final String TAG = "TooltipBitmapCache";
+    static final int DEFAULT_MAX_BYTES = 2 * 1024 * 1024;
+    private static final ArrayList<Entry> ENTRIES = new ArrayList<>();
+    private static int sMaxBytes = DEFAULT_MAX_BYTES;
+    private static int sBytes;
+
+    interface Renderer {
+        /**
+         * Draw the bubble body at the origin
+         */
+        void render(@NonNull Canvas canvas, int width, int height);
+    }
+
+    static final class Entry {
+        final Object style;
+        final int width;
+        final int height;
+        final int variant;
+        final Bitmap bitmap;
+        int refCount;
+
+        Entry(final Object style, final int width, final int height, final int variant, final Bitmap bitmap) {
+            this.style = style;
+            this.width = width;
+            this.height = height;
+            this.variant = variant;
+            this.bitmap = bitmap;
+        }
+
+        boolean matches(final Object style, final int width, final int height, final int variant) {
+            return this.style == style && this.width == width && this.height == height && this.variant == variant;
+        }
+
+        int getByteCount() {
+            return width * height * 4;
+        }
+    }
+
+    private TooltipBitmapCache() { }
+
+    /**
+     * @param style   the drawable constant state
+     * @param variant the body shape or the shadow radius
+     * @return the cached body, or null if the cache is full
+     */
+    @Nullable
+    static Entry acquire(
+        final Object style, final int width, final int height, final int variant, @NonNull final Renderer renderer) {
+        for (int i = 0; i < ENTRIES.size(); i++) {
+            final Entry entry = ENTRIES.get(i);
+            if (entry.matches(style, width, height, variant)) {
+                entry.refCount++;
+                return entry;
+            }
+        }
+
+        final int bytes = width * height * 4;
+        trim(sMaxBytes - bytes);
+
+        if (width <= 0 || height <= 0 || sBytes + bytes > sMaxBytes) {
+            log(TAG, WARN, "not caching %dx%d, size: %d/%d", width, height, sBytes, sMaxBytes);
+            return null;
+        }
+
+        final Bitmap bitmap;
+        try {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        } catch (OutOfMemoryError e) {
+            log(TAG, WARN, "failed to allocate %dx%d", width, height);
+            return null;
+        }
+
+        renderer.render(new Canvas(bitmap), width, height);
+
+        final Entry entry = new Entry(style, width, height, variant, bitmap);
+        entry.refCount = 1;
+        ENTRIES.add(entry);
+        sBytes += bytes;
+        log(TAG, VERBOSE, "cached %dx%d, size: %d", width, height, sBytes);
+        return entry;
+    }
+
+    static void release(@NonNull final Entry entry) {
+        if (entry.refCount > 0) {
+            entry.refCount--;
+        }
+    }
+
+    /**
+     * @param maxBytes max memory used by the cached bitmaps, 0 disables the cache
+     */
+    static void setMaxBytes(final int maxBytes) {
+        sMaxBytes = Math.max(0, maxBytes);
+        trim(sMaxBytes);
+    }
+
+    /**
+     * Drop all the entries. Drawables still holding one keep drawing it until they acquire a new one.
+     */
+    static void clear() {
+        log(TAG, VERBOSE, "clear, size: %d", sBytes);
+        ENTRIES.clear();
+        sBytes = 0;
+    }
+
+    /**
+     * Drop the unused entries, oldest first, until the used memory fits the given size
+     */
+    private static void trim(final int maxBytes) {
+        int i = 0;
+        while (i < ENTRIES.size() && sBytes > maxBytes) {
+            final Entry entry = ENTRIES.get(i);
+            if (entry.refCount == 0) {
+                // not recycled: a display list might still reference the bitmap
+                ENTRIES.remove(i);
+                sBytes -= entry.getByteCount();
+            } else {
+                i++;
+            }
+        }
+    }
+
+    static int getBytes() {
+        return sBytes;
+    }
+}
@@ -0,0 +1,131 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+import android.view.animation.AnimationUtils;
+
+import java.util.ArrayList;
+
+import static android.util.Log.VERBOSE;
+import static it.sephiroth.android.library.tooltip.Utils.log;
+
+/**
+ * Frame clock shared by all the animations of the tooltips attached to the same window: overlay pulses and
+ * floating animations.<br />
+ * A single animation callback is posted per frame while at least one listener is subscribed. All the listeners
+ * compute their values in that callback with the same frame time, so all the resulting invalidations are
+ * handled by the same traversal. The areas invalidated through {@link #invalidate(View, Rect)} while
+ * dispatching are merged, so each view is invalidated once per frame.
+ */
+final class TooltipClock implements Runnable {
+    private static final String TAG = "TooltipClock";
+
+    interface OnFrameListener {
+        /**
+         * @param frameTime the frame time, in the {@link AnimationUtils#currentAnimationTimeMillis()} time base
+         * @return false to be unsubscribed
+         */
+        boolean onFrame(long frameTime);
+    }
+
+    private final View mRoot;
+    private final ArrayList<OnFrameListener> mListeners = new ArrayList<>();
+    private final ArrayList<OnFrameListener> mDispatchListeners = new ArrayList<>();
+    private final ArrayList<View> mDirtyViews = new ArrayList<>();
+    private final ArrayList<Rect> mDirtyRects = new ArrayList<>();
+    private boolean mPosted;
+    private boolean mDispatching;
+
+    private TooltipClock(final View root) {
+        mRoot = root;
+    }
+
+    /**
+     * @param root the window root view
+     * @return the clock of the given window
+     */
+    static TooltipClock get(@NonNull final View root) {
+        TooltipClock clock = (TooltipClock) root.getTag(R.id.ttlm_clock);
+        if (null == clock) {
+            clock = new TooltipClock(root);
+            root.setTag(R.id.ttlm_clock, clock);
+        }
+        return clock;
+    }
+
+    void subscribe(@NonNull final OnFrameListener listener) {
+        if (!mListeners.contains(listener)) {
+            mListeners.add(listener);
+            log(TAG, VERBOSE, "subscribe, listeners: %d", mListeners.size());
+        }
+
+        if (!mPosted) {
+            mPosted = true;
+            ViewCompat.postOnAnimation(mRoot, this);
+        }
+    }
+
+    void unsubscribe(@NonNull final OnFrameListener listener) {
+        if (mListeners.remove(listener)) {
+            log(TAG, VERBOSE, "unsubscribe, listeners: %d", mListeners.size());
+        }
+
+        if (mListeners.isEmpty() && mPosted) {
+            mPosted = false;
+            mRoot.removeCallbacks(this);
+        }
+    }
+
+    /**
+     * Invalidate the given area of the view. While dispatching a frame the area is merged with the other
+     * areas of the same view and the view is invalidated once all the listeners have been called.
+     */
+    void invalidate(@NonNull final View view, @NonNull final Rect dirty) {
+        if (!mDispatching) {
+            TooltipInvalidations.record(dirty);
+            view.invalidate(dirty);
+            return;
+        }
+
+        final int index = mDirtyViews.indexOf(view);
+        if (index >= 0) {
+            mDirtyRects.get(index).union(dirty);
+        } else {
+            mDirtyViews.add(view);
+            mDirtyRects.add(new Rect(dirty));
+        }
+    }
+
+    @Override
+    public void run() {
+        mPosted = false;
+
+        final long frameTime = AnimationUtils.currentAnimationTimeMillis();
+
+        // listeners can subscribe or unsubscribe while dispatching
+        mDispatchListeners.addAll(mListeners);
+        mDispatching = true;
+        for (int i = 0; i < mDispatchListeners.size(); i++) {
+            final OnFrameListener listener = mDispatchListeners.get(i);
+            if (!listener.onFrame(frameTime)) {
+                mListeners.remove(listener);
+            }
+        }
+        mDispatching = false;
+        mDispatchListeners.clear();
+
+        for (int i = 0; i < mDirtyViews.size(); i++) {
+            TooltipInvalidations.record(mDirtyRects.get(i));
+            mDirtyViews.get(i).invalidate(mDirtyRects.get(i));
+        }
+        mDirtyViews.clear();
+        mDirtyRects.clear();
+
+        if (!mListeners.isEmpty() && !mPosted) {
+            mPosted = true;
+            ViewCompat.postOnAnimation(mRoot, this);
+        }
+    }
+}
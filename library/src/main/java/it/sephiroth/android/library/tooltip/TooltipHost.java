@@ -0,0 +1,336 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.annotation.SuppressLint;
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.MotionEvent;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.List;
+
+import static android.util.Log.INFO;
+import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
+import static it.sephiroth.android.library.tooltip.Utils.log;
+
+/**
+ * Single layer added to the decor view of a window, which hosts all the tooltips of that window.<br />
+ * The decor view only ever sees one extra child, no matter how many tooltips are visible, so adding or
+ * removing a tooltip doesn't change the decor view children. Each tooltip is only as big as its bubble
+ * and overlay: the host measures and lays them out at the position found by their placement, and hit-tests
+ * the touch events for all of them.
+ * The host is hidden (GONE) when it doesn't contain any tooltip.<br />
+ * The host also enforces the window budget: the max number of visible tooltips and of tooltips with an
+ * animated overlay. When the budget is exhausted new tooltips are either queued, by priority, until a
+ * slot is free or they replace a visible tooltip with a lower priority, according to the {@link Tooltip.BudgetPolicy}.<br />
+ * The overlay rings of all the tooltips are drawn by the host, so that the pulses invalidate only the host,
+ * once per frame.
+ */
+@SuppressLint ("ViewConstructor")
+final class TooltipHost extends ViewGroup implements ViewGroup.OnHierarchyChangeListener {
+    private static final String TAG = "TooltipHost";
+    private final TooltipQueue<Tooltip.TooltipViewImpl> mQueue = new TooltipQueue<>();
+    private final Runnable mPromoteRunnable = new Runnable() {
+        @Override
+        public void run() {
+            promote();
+        }
+    };
+    private View mTouchTarget;
+    private int mMaxVisible = Integer.MAX_VALUE;
+    private int mMaxOverlays = Integer.MAX_VALUE;
+    private Tooltip.BudgetPolicy mPolicy = Tooltip.BudgetPolicy.QUEUE;
+
+    private TooltipHost(final Context context) {
+        super(context);
+        setClipChildren(false);
+        setClipToPadding(false);
+        setWillNotDraw(true);
+        setMotionEventSplittingEnabled(false);
+        setOnHierarchyChangeListener(this);
+        setVisibility(GONE);
+    }
+
+    /**
+     * @param activity the activity
+     * @param create   true to create and install the host if it doesn't exist yet
+     * @return the tooltip host of the activity window
+     */
+    @Nullable
+    static TooltipHost get(@NonNull final Activity activity, final boolean create) {
+        final ViewGroup decorView = (ViewGroup) activity.getWindow().getDecorView();
+        TooltipHost host = (TooltipHost) decorView.getTag(R.id.ttlm_tooltip_host);
+
+        if (null == host && create) {
+            log(TAG, INFO, "installing host");
+            host = new TooltipHost(activity);
+            decorView.addView(host, new LayoutParams(MATCH_PARENT, MATCH_PARENT));
+            decorView.setTag(R.id.ttlm_tooltip_host, host);
+        }
+        return host;
+    }
+
+    void setBudget(final int maxVisible, final int maxOverlays, @NonNull final Tooltip.BudgetPolicy policy) {
+        mMaxVisible = maxVisible;
+        mMaxOverlays = maxOverlays;
+        mPolicy = policy;
+        promote();
+    }
+
+    /**
+     * Attach the tooltip if the budget allows it, otherwise queue or drop it
+     */
+    void addTooltip(@NonNull final Tooltip.TooltipViewImpl tooltip) {
+        if (tooltip.getParent() == this || mQueue.contains(tooltip)) {
+            return;
+        }
+
+        if (getVisibleCount() < mMaxVisible) {
+            attach(tooltip);
+        } else if (mPolicy == Tooltip.BudgetPolicy.QUEUE) {
+            enqueue(tooltip);
+        } else {
+            final Tooltip.TooltipViewImpl lowest = findLowestPriority();
+            if (null != lowest && lowest.getPriority() < tooltip.getPriority()) {
+                log(TAG, INFO, "[%d] replaces [%d]", tooltip.getTooltipId(), lowest.getTooltipId());
+                lowest.hide();
+                attach(tooltip);
+            } else {
+                log(TAG, INFO, "[%d] dropped", tooltip.getTooltipId());
+                tooltip.onDropped();
+            }
+        }
+    }
+
+    void removeQueued(@NonNull final Tooltip.TooltipViewImpl tooltip) {
+        mQueue.remove(tooltip);
+    }
+
+    /**
+     * Remove the queued tooltips with the given id, so they're never attached
+     *
+     * @return the number of tooltips removed
+     */
+    int removeQueued(final int tooltipId) {
+        return removeQueued(mQueue.remove(tooltipId));
+    }
+
+    /**
+     * Remove all the queued tooltips, so they're never attached
+     *
+     * @return the number of tooltips removed
+     */
+    int removeAllQueued() {
+        return removeQueued(mQueue.removeAll());
+    }
+
+    private static int removeQueued(final List<Tooltip.TooltipViewImpl> tooltips) {
+        for (int i = 0; i < tooltips.size(); i++) {
+            log(TAG, INFO, "[%d] removed from the queue", tooltips.get(i).getTooltipId());
+            tooltips.get(i).remove();
+        }
+        return tooltips.size();
+    }
+
+    private void attach(final Tooltip.TooltipViewImpl tooltip) {
+        final ViewGroup parent = (ViewGroup) getParent();
+        if (null != parent && parent.indexOfChild(this) != parent.getChildCount() - 1) {
+            // tooltips always stay on top of the window content
+            bringToFront();
+        }
+
+        setVisibility(VISIBLE);
+        tooltip.setOverlayAllowed(getOverlayCount() < mMaxOverlays);
+        addView(tooltip, new LayoutParams(MATCH_PARENT, MATCH_PARENT));
+    }
+
+    /**
+     * Queue by priority, in order of arrival for the same priority
+     */
+    private void enqueue(final Tooltip.TooltipViewImpl tooltip) {
+        log(TAG, INFO, "[%d] queued", tooltip.getTooltipId());
+        mQueue.add(tooltip);
+    }
+
+    private void promote() {
+        while (!mQueue.isEmpty() && getVisibleCount() < mMaxVisible) {
+            final Tooltip.TooltipViewImpl tooltip = mQueue.poll();
+            log(TAG, INFO, "[%d] promoted", tooltip.getTooltipId());
+            attach(tooltip);
+        }
+    }
+
+    /**
+     * @return the number of tooltips not already fading out
+     */
+    private int getVisibleCount() {
+        int count = 0;
+        for (int i = 0; i < getChildCount(); i++) {
+            final View child = getChildAt(i);
+            if (child instanceof Tooltip.TooltipViewImpl && ((Tooltip.TooltipViewImpl) child).isShowing()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int getOverlayCount() {
+        int count = 0;
+        for (int i = 0; i < getChildCount(); i++) {
+            final View child = getChildAt(i);
+            if (child instanceof Tooltip.TooltipViewImpl && ((Tooltip.TooltipViewImpl) child).hasOverlay()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Nullable
+    private Tooltip.TooltipViewImpl findLowestPriority() {
+        Tooltip.TooltipViewImpl result = null;
+        for (int i = 0; i < getChildCount(); i++) {
+            final View child = getChildAt(i);
+            if (child instanceof Tooltip.TooltipViewImpl) {
+                final Tooltip.TooltipViewImpl tooltip = (Tooltip.TooltipViewImpl) child;
+                if (tooltip.isShowing() && (null == result || tooltip.getPriority() < result.getPriority())) {
+                    result = tooltip;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void onChildViewAdded(final View parent, final View child) {
+    }
+
+    /**
+     * onViewRemoved is only available from API 23
+     */
+    @Override
+    public void onChildViewRemoved(final View parent, final View child) {
+        if (child == mTouchTarget) {
+            mTouchTarget = null;
+        }
+
+        if (!mQueue.isEmpty()) {
+            // not while the child is being removed
+            removeCallbacks(mPromoteRunnable);
+            post(mPromoteRunnable);
+        } else if (getChildCount() == 0) {
+            setVisibility(GONE);
+        }
+    }
+
+    @Override
+    protected void onMeasure(final int widthMeasureSpec, final int heightMeasureSpec) {
+        final int width = MeasureSpec.getSize(widthMeasureSpec);
+        final int height = MeasureSpec.getSize(heightMeasureSpec);
+        final int childWidthMeasureSpec = MeasureSpec.makeMeasureSpec(width, MeasureSpec.AT_MOST);
+        final int childHeightMeasureSpec = MeasureSpec.makeMeasureSpec(height, MeasureSpec.AT_MOST);
+
+        for (int i = 0; i < getChildCount(); i++) {
+            final View child = getChildAt(i);
+            if (child.getVisibility() != GONE) {
+                child.measure(childWidthMeasureSpec, childHeightMeasureSpec);
+            }
+        }
+        setMeasuredDimension(width, height);
+    }
+
+    /**
+     * The tooltips are laid out where their placement put them. When the window changes they're placed again
+     */
+    @Override
+    protected void onLayout(final boolean changed, final int l, final int t, final int r, final int b) {
+        for (int i = 0; i < getChildCount(); i++) {
+            final View child = getChildAt(i);
+            if (child.getVisibility() == GONE || !(child instanceof Tooltip.TooltipViewImpl)) {
+                continue;
+            }
+
+            final Tooltip.TooltipViewImpl tooltip = (Tooltip.TooltipViewImpl) child;
+            final Rect bounds = tooltip.getLayerBounds();
+            child.layout(bounds.left, bounds.top, bounds.right, bounds.bottom);
+
+            if (changed) {
+                tooltip.invalidatePositions(Tooltip.TooltipViewImpl.DIRTY_SCREEN | Tooltip.TooltipViewImpl.DIRTY_ANCHOR);
+            }
+        }
+    }
+
+    /**
+     * The down event is hit-tested against the tooltips from the top-most one: it's dispatched to the tooltip
+     * under it and every other tooltip only applies its outside close policy, until one consumes it.
+     * The rest of the gesture goes to the tooltip which consumed the down event.
+     */
+    @Override
+    public boolean dispatchTouchEvent(final MotionEvent event) {
+        final int action = event.getActionMasked();
+
+        if (action == MotionEvent.ACTION_DOWN) {
+            mTouchTarget = null;
+
+            for (int i = getChildCount() - 1; i >= 0; i--) {
+                final View child = getChildAt(i);
+                if (child.getVisibility() != VISIBLE || !(child instanceof Tooltip.TooltipViewImpl)) {
+                    continue;
+                }
+
+                final Tooltip.TooltipViewImpl tooltip = (Tooltip.TooltipViewImpl) child;
+                final boolean consumed;
+                if (tooltip.containsTouch(event.getX() - child.getLeft(), event.getY() - child.getTop())) {
+                    consumed = dispatchToChild(child, event);
+                } else {
+                    consumed = tooltip.onTouchOutside();
+                }
+
+                if (consumed) {
+                    mTouchTarget = child;
+                    break;
+                }
+            }
+            return null != mTouchTarget;
+        }
+
+        final View target = mTouchTarget;
+        if (null == target) {
+            return false;
+        }
+
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            mTouchTarget = null;
+        }
+        return dispatchToChild(target, event);
+    }
+
+    private static boolean dispatchToChild(final View child, final MotionEvent event) {
+        final float dx = -child.getLeft();
+        final float dy = -child.getTop();
+        event.offsetLocation(dx, dy);
+        final boolean handled = child.dispatchTouchEvent(event);
+        event.offsetLocation(-dx, -dy);
+        return handled;
+    }
+
+    /**
+     * Each tooltip is followed by its overlay rings, which stay on top of its bubble
+     */
+    @Override
+    protected boolean drawChild(final Canvas canvas, final View child, final long drawingTime) {
+        final boolean more = super.drawChild(canvas, child, drawingTime);
+        if (child instanceof Tooltip.TooltipViewImpl) {
+            ((Tooltip.TooltipViewImpl) child).drawRings(canvas);
+        }
+        return more;
+    }
+
+    @Override
+    public boolean shouldDelayChildPressedState() {
+        return false;
+    }
+}
@@ -0,0 +1,170 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.annotation.TargetApi;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.view.Choreographer;
+import android.view.View;
+
+import static android.util.Log.DEBUG;
+import static it.sephiroth.android.library.tooltip.Utils.log;
+
+/**
+ * Debug counter of the pixels invalidated by the tooltips, per frame.<br />
+ * The first invalidation of a frame posts a Choreographer frame callback, which closes the frame when the
+ * next one starts: everything recorded in between, from animation callbacks, timers or input, is counted
+ * in the same frame. Before API 16 frames are approximated by {@link TooltipTimer#TICK_MS} periods.<br />
+ * Disabled by default, in which case recording is a no-op.
+ */
+@MainThread
+final class TooltipInvalidations {
+    private static final String TAG = "TooltipInvalidations";
+    private static boolean sEnabled;
+    private static boolean sFramePending;
+    private static Handler sHandler;
+    private static Object sFrameCallback;
+    private static final Runnable FRAME_END = new Runnable() {
+        @Override
+        public void run() {
+            onFrameEnd();
+        }
+    };
+    private static long sFramePixels;
+    private static long sLastFramePixels;
+    private static final Rect TMP_RECT = new Rect();
+    private static final Rect TMP_RECT2 = new Rect();
+
+    private TooltipInvalidations() { }
+
+    static void setEnabled(final boolean enabled) {
+        sEnabled = enabled;
+        cancelFrameEnd();
+        sFramePixels = 0;
+        sLastFramePixels = 0;
+    }
+
+    static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    static void record(@NonNull final Rect rect) {
+        if (sEnabled && !rect.isEmpty()) {
+            record(rect.width(), rect.height());
+        }
+    }
+
+    /**
+     * Record the area of the parent damaged by a change of the view alpha: the view bounds, transformation
+     * included, visible in the parent
+     */
+    static void record(@NonNull final View view) {
+        recordTranslation(view, 0, 0);
+    }
+
+    /**
+     * Record the area of the parent damaged by moving the view by the given offset: the union of the old and
+     * new view bounds visible in the parent
+     */
+    static void recordTranslation(@NonNull final View view, final float dx, final float dy) {
+        if (!sEnabled || !(view.getParent() instanceof View)) {
+            return;
+        }
+
+        final View parent = (View) view.getParent();
+        view.getHitRect(TMP_RECT);
+        TMP_RECT2.set(TMP_RECT);
+        // the new bounds, rounded out to whole pixels
+        TMP_RECT2.offset((int) Math.floor(dx), (int) Math.floor(dy));
+        TMP_RECT2.right += dx != 0 ? 1 : 0;
+        TMP_RECT2.bottom += dy != 0 ? 1 : 0;
+        TMP_RECT.union(TMP_RECT2);
+
+        if (TMP_RECT.intersect(0, 0, parent.getWidth(), parent.getHeight())) {
+            record(TMP_RECT);
+        }
+    }
+
+    static void record(final int width, final int height) {
+        if (!sEnabled || width <= 0 || height <= 0) {
+            return;
+        }
+
+        if (!sFramePending) {
+            postFrameEnd();
+        }
+        sFramePixels += (long) width * height;
+    }
+
+    private static void onFrameEnd() {
+        sFramePending = false;
+        sLastFramePixels = sFramePixels;
+        sFramePixels = 0;
+        log(TAG, DEBUG, "invalidated pixels: %d", sLastFramePixels);
+
+        if (sEnabled && sLastFramePixels > 0) {
+            // one more frame, so that the count goes back to 0 once the tooltips stop invalidating
+            postFrameEnd();
+        }
+    }
+
+    private static void postFrameEnd() {
+        sFramePending = true;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            FrameCallbacks.post();
+        } else {
+            if (null == sHandler) {
+                sHandler = new Handler(Looper.getMainLooper());
+            }
+            sHandler.postDelayed(FRAME_END, TooltipTimer.TICK_MS);
+        }
+    }
+
+    private static void cancelFrameEnd() {
+        if (!sFramePending) {
+            return;
+        }
+        sFramePending = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            FrameCallbacks.cancel();
+        } else if (null != sHandler) {
+            sHandler.removeCallbacks(FRAME_END);
+        }
+    }
+
+    /**
+     * Keeps the Choreographer classes out of TooltipInvalidations, for API 14 and 15
+     */
+    @TargetApi (Build.VERSION_CODES.JELLY_BEAN)
+    private static final class FrameCallbacks {
+        private FrameCallbacks() { }
+
+        static void post() {
+            if (null == sFrameCallback) {
+                sFrameCallback = new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(final long frameTimeNanos) {
+                        onFrameEnd();
+                    }
+                };
+            }
+            Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) sFrameCallback);
+        }
+
+        static void cancel() {
+            if (null != sFrameCallback) {
+                Choreographer.getInstance().removeFrameCallback((Choreographer.FrameCallback) sFrameCallback);
+            }
+        }
+    }
+
+    /**
+     * @return the pixels invalidated during the last complete frame
+     */
+    static long getLastFramePixels() {
+        return sLastFramePixels;
+    }
+}
@@ -0,0 +1,105 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.support.annotation.NonNull;
+import android.view.View;
+
+import static android.util.Log.VERBOSE;
+import static it.sephiroth.android.library.tooltip.Utils.log;
+
+/**
+ * Promotes the animated views to a hardware layer for the duration of their animations.<br />
+ * Requests are counted per view, so overlapping animations on the same view share the layer, which is
+ * removed when the last one ends. Views already using a layer of their own are left alone, and views larger
+ * than {@link #MAX_LAYER_BYTES} are never promoted.
+ */
+final class TooltipLayers {
+    private static final String TAG = "TooltipLayers";
+    static final int MAX_LAYER_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Holds the layer while the animator runs
+     */
+    static final class LayerListener extends AnimatorListenerAdapter {
+        private final View mView;
+        private boolean mAcquired;
+
+        LayerListener(@NonNull final View view) {
+            mView = view;
+        }
+
+        @Override
+        public void onAnimationStart(final Animator animation) {
+            if (!mAcquired) {
+                mAcquired = true;
+                acquire(mView);
+            }
+        }
+
+        @Override
+        public void onAnimationEnd(final Animator animation) {
+            if (mAcquired) {
+                mAcquired = false;
+                release(mView);
+            }
+        }
+    }
+
+    private static final class LayerState {
+        int count;
+        boolean promoted;
+    }
+
+    private TooltipLayers() { }
+
+    static void acquire(@NonNull final View view) {
+        final LayerState state = getState(view, true);
+
+        if (state.count++ == 0 && view.getLayerType() == View.LAYER_TYPE_NONE && fits(view)) {
+            log(TAG, VERBOSE, "promote %s", view);
+            state.promoted = true;
+            view.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+        }
+    }
+
+    static void release(@NonNull final View view) {
+        final LayerState state = getState(view, false);
+        if (null == state || state.count <= 0) {
+            return;
+        }
+
+        if (--state.count == 0 && state.promoted) {
+            log(TAG, VERBOSE, "demote %s", view);
+            state.promoted = false;
+            view.setLayerType(View.LAYER_TYPE_NONE, null);
+        }
+    }
+
+    /**
+     * Animations usually start before the first layout, so the size is checked again once known
+     */
+    static void onSizeChanged(@NonNull final View view) {
+        final LayerState state = getState(view, false);
+        if (null != state && state.promoted && !fits(view)) {
+            log(TAG, VERBOSE, "too large, demote %s", view);
+            state.promoted = false;
+            view.setLayerType(View.LAYER_TYPE_NONE, null);
+        }
+    }
+
+    private static boolean fits(final View view) {
+        final long width = Math.max(view.getWidth(), view.getMeasuredWidth());
+        final long height = Math.max(view.getHeight(), view.getMeasuredHeight());
+        return width * height * 4 <= MAX_LAYER_BYTES;
+    }
+
+    private static LayerState getState(final View view, final boolean create) {
+        LayerState state = (LayerState) view.getTag(R.id.ttlm_layer_state);
+        if (null == state && create) {
+            state = new LayerState();
+            view.setTag(R.id.ttlm_layer_state, state);
+        }
+        return state;
+    }
+}
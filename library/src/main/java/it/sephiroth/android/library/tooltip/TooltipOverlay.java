@@ -1,12 +1,37 @@
 package it.sephiroth.android.library.tooltip;
 
 import android.content.Context;
-import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewParent;
 import android.widget.ImageView;
 
+/**
+ * Hosts the pulsing rings of a tooltip. Inside a {@link TooltipHost} the rings are drawn by the host, which is
+ * invalidated once per frame for all the overlays of the window, see {@link #drawRings(Canvas, float)}.
+ * Elsewhere the overlay draws and invalidates the rings itself.
+ */
 public class TooltipOverlay extends ImageView {
     private int mMargins;
+    private TooltipOverlayDrawable mDrawable;
+    private TooltipClock mClock;
+    private View mRingsHost;
+    private final RectF mDirtyRect = new RectF();
+    private final Rect mTmpRect = new Rect();
+    private final TooltipClock.OnFrameListener mFrameListener = new TooltipClock.OnFrameListener() {
+        @Override
+        public boolean onFrame(final long frameTime) {
+            final boolean running = mDrawable.onFrame(frameTime);
+            mClock.invalidate(getRingsBounds(), mTmpRect);
+            return running;
+        }
+    };
 
     public TooltipOverlay(Context context) {
         this(context, null);
@@ -22,13 +47,10 @@ public class TooltipOverlay extends ImageView {
     }
 
     private void init(final Context context, final int defStyleResId) {
-        TooltipOverlayDrawable drawable = new TooltipOverlayDrawable(context, defStyleResId);
-        setImageDrawable(drawable);
+        mDrawable = new TooltipOverlayDrawable(context, defStyleResId);
+        setImageDrawable(mDrawable);
 
-        final TypedArray array =
-            context.getTheme().obtainStyledAttributes(defStyleResId, R.styleable.TooltipOverlay);
-        mMargins = array.getDimensionPixelSize(R.styleable.TooltipOverlay_android_layout_margin, 0);
-        array.recycle();
+        mMargins = TooltipStyle.getOverlay(context, defStyleResId).margin;
 
     }
 
@@ -40,4 +62,118 @@ public class TooltipOverlay extends ImageView {
     public int getLayoutMargins() {
         return mMargins;
     }
+
+    /**
+     * Map the area of the rings to the coordinates of the view which draws them
+     *
+     * @return the view which draws the rings, the area is stored in {@link #mTmpRect}
+     */
+    private View getRingsBounds() {
+        mDirtyRect.set(mDrawable.getDirtyBounds());
+        getImageMatrix().mapRect(mDirtyRect);
+        mDirtyRect.offset(getPaddingLeft(), getPaddingTop());
+        if (null != mRingsHost) {
+            mDirtyRect.offset(getHostOffsetX(), getHostOffsetY());
+        }
+        mDirtyRect.roundOut(mTmpRect);
+        return null != mRingsHost ? mRingsHost : this;
+    }
+
+    private float getHostOffsetX() {
+        float offset = 0;
+        for (View view = this; view != mRingsHost && null != view; view = getParentView(view)) {
+            offset += view.getLeft() + view.getTranslationX();
+        }
+        return offset;
+    }
+
+    private float getHostOffsetY() {
+        float offset = 0;
+        for (View view = this; view != mRingsHost && null != view; view = getParentView(view)) {
+            offset += view.getTop() + view.getTranslationY();
+        }
+        return offset;
+    }
+
+    @Nullable
+    private static View getParentView(final View view) {
+        final ViewParent parent = view.getParent();
+        return parent instanceof View ? (View) parent : null;
+    }
+
+    /**
+     * The host draws the rings where the overlay is, so it must be invalidated before and after the overlay moves
+     */
+    void invalidateRings() {
+        if (null != mRingsHost && null != mClock && mDrawable.isStarted()) {
+            mClock.invalidate(getRingsBounds(), mTmpRect);
+        }
+    }
+
+    /**
+     * Draw the rings on the canvas of the host
+     *
+     * @param alpha the alpha of the rings, the host doesn't apply the overlay view alpha
+     */
+    void drawRings(@NonNull final Canvas canvas, final float alpha) {
+        if (null == mRingsHost || alpha <= 0) {
+            return;
+        }
+
+        final int count = canvas.save();
+        canvas.translate(getHostOffsetX() + getPaddingLeft(), getHostOffsetY() + getPaddingTop());
+        canvas.concat(getImageMatrix());
+        mDrawable.setAlpha((int) (alpha * 255));
+        mDrawable.draw(canvas);
+        canvas.restoreToCount(count);
+    }
+
+    @Override
+    protected void onDraw(final Canvas canvas) {
+        if (null == mRingsHost) {
+            super.onDraw(canvas);
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        for (View view = getParentView(this); null != view; view = getParentView(view)) {
+            if (view instanceof TooltipHost) {
+                mRingsHost = view;
+                break;
+            }
+        }
+        mClock = TooltipClock.get(getRootView());
+        mDrawable.setClockDriven(true);
+        mClock.subscribe(mFrameListener);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        invalidateRings();
+        if (null != mClock) {
+            mClock.unsubscribe(mFrameListener);
+            mClock = null;
+        }
+        mRingsHost = null;
+        mDrawable.setAlpha(255);
+        mDrawable.setClockDriven(false);
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void invalidateDrawable(@NonNull final Drawable drawable) {
+        if (drawable == mDrawable && null != mRingsHost) {
+            // already recorded by the drawable
+            getRingsBounds().invalidate(mTmpRect);
+        } else {
+            super.invalidateDrawable(drawable);
+        }
+
+        if (drawable == mDrawable && null != mClock) {
+            // the pulse has been (re)started
+            mClock.subscribe(mFrameListener);
+        }
+    }
 }
\ No newline at end of file
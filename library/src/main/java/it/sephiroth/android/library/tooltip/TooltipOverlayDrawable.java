@@ -1,22 +1,27 @@
 package it.sephiroth.android.library.tooltip;
 
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
-import android.animation.AnimatorSet;
-import android.animation.ObjectAnimator;
-import android.animation.ValueAnimator;
 import android.content.Context;
-import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.ColorFilter;
 import android.graphics.Paint;
 import android.graphics.PixelFormat;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
+import android.support.annotation.NonNull;
 import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.AnimationUtils;
+import android.view.animation.Interpolator;
+
+import java.util.WeakHashMap;
 
 /**
  * Created by alessandro on 12/12/15.
+ * <p>
+ * Two pulsing rings. Radius and alpha of both rings are computed from the frame time: every cycle each ring
+ * grows from 0 to the full radius in {@code duration}, fading in, then fades out starting at
+ * {@link #FADEOUT_START_DELAY}. The second ring starts {@link #SECOND_ANIM_START_DELAY} later.<br />
+ * When hosted by a {@link TooltipOverlay} the values are updated by the window {@link TooltipClock}, otherwise
+ * the drawable updates them itself in {@link #draw(Canvas)}.
  */
 public class TooltipOverlayDrawable extends Drawable {
     @SuppressWarnings ("unused")
@@ -25,157 +30,289 @@ public class TooltipOverlayDrawable extends Drawable {
     public static final double FADEOUT_START_DELAY = 0.55;
     public static final double FADEIN_DURATION = 0.3;
     public static final double SECOND_ANIM_START_DELAY = 0.25;
-    private Paint mOuterPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-    private Paint mInnerPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-    private float mOuterRadius;
-    private float mInnerRadius = 0;
-    private AnimatorSet mFirstAnimatorSet;
-    private AnimatorSet mSecondAnimatorSet;
-    private ValueAnimator mFirstAnimator;
-    private ValueAnimator mSecondAnimator;
-    private int mRepeatIndex;
+    private static final Interpolator INTERPOLATOR = new AccelerateDecelerateInterpolator();
+    private static final WeakHashMap<TooltipStyle.Overlay, OverlayState> STATES = new WeakHashMap<>();
+    private OverlayState mState;
+    private boolean mMutated;
+    private Paint mPaint;
+    private float mMaxRadius;
+    private final int mAlpha;
+    private int mDrawAlpha = 255;
+    private long mStartTime;
     private boolean mStarted;
-    private int mOuterAlpha;
-    private int mInnerAlpha;
-    private int mRepeatCount = 1;
-    private long mDuration = 400;
+    private boolean mClockDriven;
+    private final float[] mRadius = new float[2];
+    private final int[] mAlphas = new int[2];
+    private final Rect mDirtyRect = new Rect();
+    private float mDirtyRadius;
+    private final int mRepeatCount;
+    private final long mDuration;
 
     public TooltipOverlayDrawable(Context context, int defStyleResId) {
-        mOuterPaint.setStyle(Paint.Style.FILL);
-        mInnerPaint.setStyle(Paint.Style.FILL);
+        this(getState(context, defStyleResId));
+    }
 
-        final TypedArray array =
-            context.getTheme().obtainStyledAttributes(defStyleResId, R.styleable.TooltipOverlay);
+    private TooltipOverlayDrawable(final OverlayState state) {
+        mState = state;
+        mPaint = state.paint;
+        mAlpha = state.alpha;
+        mRepeatCount = state.repeatCount;
+        mDuration = state.duration;
+    }
 
-        for (int i = 0; i < array.getIndexCount(); i++) {
-            int index = array.getIndex(i);
+    private static OverlayState getState(final Context context, final int defStyleResId) {
+        final TooltipStyle.Overlay style = TooltipStyle.getOverlay(context, defStyleResId);
+        OverlayState state = STATES.get(style);
+        if (null == state) {
+            state = new OverlayState(style);
+            STATES.put(style, state);
+        }
+        return state;
+    }
 
-            if (index == R.styleable.TooltipOverlay_android_color) {
-                int color = array.getColor(index, 0);
-                mOuterPaint.setColor(color);
-                mInnerPaint.setColor(color);
+    /**
+     * The immutable style of the pulse: paint, alpha, duration and repeat count. The paint alpha is set before
+     * every ring is drawn, so the paint can be shared by all the drawables of the same style.
+     */
+    static final class OverlayState extends ConstantState {
+        final Paint paint;
+        final int alpha;
+        final int repeatCount;
+        final long duration;
+
+        OverlayState(final TooltipStyle.Overlay style) {
+            paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paint.setStyle(Paint.Style.FILL);
+            paint.setColor(style.color);
+            alpha = paint.getAlpha();
+            repeatCount = style.repeatCount;
+            duration = style.duration;
+        }
 
-            } else if (index == R.styleable.TooltipOverlay_ttlm_repeatCount) {
-                mRepeatCount = array.getInt(index, 1);
+        OverlayState(final OverlayState other) {
+            paint = new Paint(other.paint);
+            alpha = other.alpha;
+            repeatCount = other.repeatCount;
+            duration = other.duration;
+        }
 
-            } else if (index == R.styleable.TooltipOverlay_android_alpha) {
-                int alpha = (int) (array.getFloat(index, mInnerPaint.getAlpha() / ALPHA_MAX) * 255);
-                mInnerPaint.setAlpha(alpha);
-                mOuterPaint.setAlpha(alpha);
+        @NonNull
+        @Override
+        public Drawable newDrawable() {
+            return new TooltipOverlayDrawable(this);
+        }
 
-            } else if (index == R.styleable.TooltipOverlay_ttlm_duration) {
-                mDuration = array.getInt(index, 400);
-            }
+        @Override
+        public int getChangingConfigurations() {
+            return 0;
         }
+    }
 
-        array.recycle();
+    @Override
+    public ConstantState getConstantState() {
+        return mState;
+    }
 
-        mOuterAlpha = getOuterAlpha();
-        mInnerAlpha = getInnerAlpha();
+    @NonNull
+    @Override
+    public Drawable mutate() {
+        if (!mMutated && super.mutate() == this) {
+            mState = new OverlayState(mState);
+            mPaint = mState.paint;
+            mMutated = true;
+        }
+        return this;
+    }
 
-        // first
-        Animator fadeIn = ObjectAnimator.ofInt(this, "outerAlpha", 0, mOuterAlpha);
-        fadeIn.setDuration((long) (mDuration * FADEIN_DURATION));
+    public int getOuterAlpha() {
+        return mAlpha;
+    }
 
-        Animator fadeOut = ObjectAnimator.ofInt(this, "outerAlpha", mOuterAlpha, 0, 0);
-        fadeOut.setStartDelay((long) (mDuration * FADEOUT_START_DELAY));
-        fadeOut.setDuration((long) (mDuration * (1.0 - FADEOUT_START_DELAY)));
+    /**
+     * @deprecated the ring alpha is computed from the frame time, the value is replaced by the next frame
+     */
+    @Deprecated
+    @SuppressWarnings ("unused")
+    public void setOuterAlpha(final int value) {
+        mAlphas[0] = value;
+        invalidateSelf();
+    }
 
-        mFirstAnimator = ObjectAnimator.ofFloat(this, "outerRadius", 0, 1);
-        mFirstAnimator.setDuration(mDuration);
+    public int getInnerAlpha() {
+        return mAlpha;
+    }
 
-        mFirstAnimatorSet = new AnimatorSet();
-        mFirstAnimatorSet.playTogether(fadeIn, mFirstAnimator, fadeOut);
-        mFirstAnimatorSet.setInterpolator(new AccelerateDecelerateInterpolator());
-        mFirstAnimatorSet.setDuration(mDuration);
+    /**
+     * @deprecated the ring alpha is computed from the frame time, the value is replaced by the next frame
+     */
+    @Deprecated
+    @SuppressWarnings ("unused")
+    public void setInnerAlpha(final int value) {
+        mAlphas[1] = value;
+        invalidateSelf();
+    }
 
-        // second
-        fadeIn = ObjectAnimator.ofInt(this, "innerAlpha", 0, mInnerAlpha);
-        fadeIn.setDuration((long) (mDuration * FADEIN_DURATION));
+    /**
+     * @deprecated the ring radius is computed from the frame time
+     */
+    @Deprecated
+    @SuppressWarnings ("unused")
+    public float getOuterRadius() {
+        return mRadius[0];
+    }
 
-        fadeOut = ObjectAnimator.ofInt(this, "innerAlpha", mInnerAlpha, 0, 0);
-        fadeOut.setStartDelay((long) (mDuration * FADEOUT_START_DELAY));
-        fadeOut.setDuration((long) (mDuration * (1.0 - FADEOUT_START_DELAY)));
+    /**
+     * @deprecated the ring radius is computed from the frame time, the value is replaced by the next frame
+     */
+    @Deprecated
+    @SuppressWarnings ("unused")
+    public void setOuterRadius(final float value) {
+        mRadius[0] = value;
+        mDirtyRadius = Math.max(mDirtyRadius, value);
+        invalidateSelf();
+    }
 
-        mSecondAnimator = ObjectAnimator.ofFloat(this, "innerRadius", 0, 1);
-        mSecondAnimator.setDuration(mDuration);
+    /**
+     * @deprecated the ring radius is computed from the frame time
+     */
+    @Deprecated
+    @SuppressWarnings ("unused")
+    public float getInnerRadius() {
+        return mRadius[1];
+    }
 
-        mSecondAnimatorSet = new AnimatorSet();
-        mSecondAnimatorSet.playTogether(fadeIn, mSecondAnimator, fadeOut);
-        mSecondAnimatorSet.setInterpolator(new AccelerateDecelerateInterpolator());
-        mSecondAnimatorSet.setStartDelay((long) (mDuration * SECOND_ANIM_START_DELAY));
-        mSecondAnimatorSet.setDuration(mDuration);
+    /**
+     * @deprecated the ring radius is computed from the frame time, the value is replaced by the next frame
+     */
+    @Deprecated
+    @SuppressWarnings ("unused")
+    public void setInnerRadius(final float value) {
+        mRadius[1] = value;
+        mDirtyRadius = Math.max(mDirtyRadius, value);
+        invalidateSelf();
+    }
 
-        mFirstAnimatorSet.addListener(new AnimatorListenerAdapter() {
-            boolean cancelled;
+    /**
+     * Let the owner update the animated values through {@link #onFrame(long)}
+     */
+    void setClockDriven(final boolean driven) {
+        mClockDriven = driven;
+    }
 
-            @Override
-            public void onAnimationCancel(Animator animation) {
-                super.onAnimationCancel(animation);
-                cancelled = true;
-            }
+    /**
+     * Update both rings at the given frame time
+     *
+     * @return false once the pulse is over
+     */
+    boolean onFrame(final long frameTime) {
+        if (!mStarted || mDuration <= 0) {
+            return false;
+        }
 
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                if (!cancelled && isVisible() && ++mRepeatIndex < mRepeatCount) {
-                    mFirstAnimatorSet.start();
-                }
-            }
-        });
+        final long time = frameTime - mStartTime;
+        final float lastRadius = Math.max(mRadius[0], mRadius[1]);
+        final boolean outer = updateRing(0, time);
+        final boolean inner = updateRing(1, time - (long) (mDuration * SECOND_ANIM_START_DELAY));
 
-        mSecondAnimatorSet.addListener(new AnimatorListenerAdapter() {
-            boolean cancelled;
+        if (!outer && !inner) {
+            mStarted = false;
+        }
 
-            @Override
-            public void onAnimationCancel(Animator animation) {
-                super.onAnimationCancel(animation);
-                cancelled = true;
-            }
+        // the rings drawn in the last frame must be erased too
+        mDirtyRadius = Math.max(lastRadius, Math.max(mRadius[0], mRadius[1]));
+        return mStarted;
+    }
 
-            @Override
-            public void onAnimationEnd(Animator animation) {
-                if (!cancelled && isVisible() && mRepeatIndex < mRepeatCount) {
-                    mSecondAnimatorSet.setStartDelay(0);
-                    mSecondAnimatorSet.start();
-                }
-            }
-        });
+    @Override
+    public void draw(Canvas canvas) {
+        if (!mStarted) {
+            return;
+        }
 
-    }
+        if (!mClockDriven && onFrame(AnimationUtils.currentAnimationTimeMillis())) {
+            invalidateSelf();
+        }
 
-    public int getOuterAlpha() {
-        return mOuterPaint.getAlpha();
-    }
+        final Rect bounds = getBounds();
+        final int centerX = bounds.width() / 2;
+        final int centerY = bounds.height() / 2;
 
-    @SuppressWarnings ("unused")
-    public void setOuterAlpha(final int value) {
-        mOuterPaint.setAlpha(value);
-        invalidateSelf();
+        for (int i = 0; i < mRadius.length; i++) {
+            if (mAlphas[i] > 0 && mRadius[i] > 0) {
+                mPaint.setAlpha(mAlphas[i] * mDrawAlpha / 255);
+                canvas.drawCircle(centerX, centerY, mRadius[i], mPaint);
+            }
+        }
     }
 
-    public int getInnerAlpha() {
-        return mInnerPaint.getAlpha();
-    }
+    /**
+     * Compute a ring at the given time since its first cycle started
+     *
+     * @return false once all the cycles are over
+     */
+    private boolean updateRing(final int ring, final long time) {
+        mRadius[ring] = 0;
+        mAlphas[ring] = 0;
+
+        if (time < 0) {
+            return true;
+        }
 
-    @SuppressWarnings ("unused")
-    public void setInnerAlpha(final int value) {
-        mInnerPaint.setAlpha(value);
-        invalidateSelf();
+        final long cycleDuration = (long) (mDuration * (1.0 + FADEOUT_START_DELAY));
+        if (time / cycleDuration >= Math.max(1, mRepeatCount)) {
+            return false;
+        }
+
+        final long cycleTime = time % cycleDuration;
+        final float radius = mMaxRadius * INTERPOLATOR.getInterpolation(Math.min(1f, (float) cycleTime / mDuration));
+        final long fadeOutStart = (long) (mDuration * FADEOUT_START_DELAY);
+        final int alpha;
+
+        if (cycleTime < fadeOutStart) {
+            alpha = (int) (mAlpha * INTERPOLATOR.getInterpolation((float) cycleTime / mDuration));
+        } else {
+            // fades out in the first half of the fade out animation, then stays transparent
+            final float fraction = INTERPOLATOR.getInterpolation((float) (cycleTime - fadeOutStart) / mDuration);
+            alpha = fraction < 0.5f ? (int) (mAlpha * (1f - fraction * 2)) : 0;
+        }
+
+        mRadius[ring] = radius;
+        mAlphas[ring] = alpha;
+        return true;
     }
 
+    /**
+     * @return the bounds of the rings drawn in the current and in the last frame
+     */
+    @NonNull
     @Override
-    public void draw(Canvas canvas) {
-        Rect bounds = getBounds();
-        int centerX = bounds.width() / 2;
-        int centerY = bounds.height() / 2;
-        canvas.drawCircle(centerX, centerY, mOuterRadius, mOuterPaint);
-        canvas.drawCircle(centerX, centerY, mInnerRadius, mInnerPaint);
+    public Rect getDirtyBounds() {
+        final Rect bounds = getBounds();
+        final int radius = (int) Math.ceil(mDirtyRadius) + 1;
+        final int centerX = bounds.width() / 2;
+        final int centerY = bounds.height() / 2;
+        mDirtyRect.set(centerX - radius, centerY - radius, centerX + radius, centerY + radius);
+        mDirtyRect.intersect(bounds);
+        return mDirtyRect;
+    }
 
+    @Override
+    public void invalidateSelf() {
+        TooltipInvalidations.record(getDirtyBounds());
+        super.invalidateSelf();
     }
 
+    /**
+     * Scale the alpha of the rings, which is otherwise computed from the frame time
+     */
     @Override
-    public void setAlpha(int i) {
+    public void setAlpha(int alpha) {
+        mDrawAlpha = alpha;
+    }
 
+    @Override
+    public int getAlpha() {
+        return mDrawAlpha;
     }
 
     @Override
@@ -206,9 +343,7 @@ public class TooltipOverlayDrawable extends Drawable {
     @Override
     protected void onBoundsChange(Rect bounds) {
         super.onBoundsChange(bounds);
-        mOuterRadius = Math.min(bounds.width(), bounds.height()) / 2;
-        mFirstAnimator.setFloatValues(0, mOuterRadius);
-        mSecondAnimator.setFloatValues(0, mOuterRadius);
+        mMaxRadius = Math.min(bounds.width(), bounds.height()) / 2;
     }
 
     @Override
@@ -221,12 +356,15 @@ public class TooltipOverlayDrawable extends Drawable {
         return 96;
     }
 
+    boolean isStarted() {
+        return mStarted;
+    }
+
     public void play() {
-        mRepeatIndex = 0;
         mStarted = true;
-        mFirstAnimatorSet.start();
-        mSecondAnimatorSet.setStartDelay((long) (mDuration * SECOND_ANIM_START_DELAY));
-        mSecondAnimatorSet.start();
+        mStartTime = AnimationUtils.currentAnimationTimeMillis();
+        onFrame(mStartTime);
+        invalidateSelf();
     }
 
     public void replay() {
@@ -235,35 +373,9 @@ public class TooltipOverlayDrawable extends Drawable {
     }
 
     public void stop() {
-        mFirstAnimatorSet.cancel();
-        mSecondAnimatorSet.cancel();
-
-        mRepeatIndex = 0;
-        mStarted = false;
-
-        setInnerRadius(0);
-        setOuterRadius(0);
-    }
-
-    @SuppressWarnings ("unused")
-    public float getInnerRadius() {
-        return mInnerRadius;
-    }
-
-    @SuppressWarnings ("unused")
-    public void setInnerRadius(final float rippleRadius) {
-        mInnerRadius = rippleRadius;
-        invalidateSelf();
-    }
-
-    @SuppressWarnings ("unused")
-    public float getOuterRadius() {
-        return mOuterRadius;
-    }
-
-    @SuppressWarnings ("unused")
-    public void setOuterRadius(final float value) {
-        mOuterRadius = value;
-        invalidateSelf();
+        if (mStarted) {
+            mStarted = false;
+            invalidateSelf();
+        }
     }
 }
@@ -0,0 +1,120 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.graphics.Path;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.HashMap;
+
+/**
+ * Small LRU cache of bubble paths, shared by all the {@link TooltipTextDrawable} of the same style.<br />
+ * Paths are built at the origin and keyed by size, arrow gravity and offset, padding, corner radius
+ * and arrow weight. The cache only deduplicates the paths: each drawable keeps the path it got until its
+ * geometry changes, so a path is never modified once built and evicting it doesn't affect the drawables
+ * still using it, however many they are.
+ */
+final class TooltipPathCache {
+    static final int MAX_SIZE = 8;
+    static final int NO_ARROW = -1;
+    static final int NO_POINT = -2;
+    private static final HashMap<Long, TooltipPathCache> CACHES = new HashMap<>();
+
+    static final class Entry {
+        final Path path = new Path();
+        final int width;
+        final int height;
+        final int gravity;
+        final int arrowX;
+        final int arrowY;
+        final int padding;
+        final float radius;
+        final int arrowWeight;
+        long lastUsed;
+
+        Entry(
+            final int width, final int height, final int gravity, final int arrowX, final int arrowY, final int padding,
+            final float radius, final int arrowWeight) {
+            this.width = width;
+            this.height = height;
+            this.gravity = gravity;
+            this.arrowX = arrowX;
+            this.arrowY = arrowY;
+            this.padding = padding;
+            this.radius = radius;
+            this.arrowWeight = arrowWeight;
+        }
+
+        boolean matches(
+            final int width, final int height, final int gravity, final int arrowX, final int arrowY, final int padding,
+            final float radius, final int arrowWeight) {
+            return this.width == width
+                && this.height == height
+                && this.gravity == gravity
+                && this.arrowX == arrowX
+                && this.arrowY == arrowY
+                && this.padding == padding
+                && this.radius == radius
+                && this.arrowWeight == arrowWeight;
+        }
+    }
+
+    private final Entry[] mEntries = new Entry[MAX_SIZE];
+    private long mClock;
+
+    private TooltipPathCache() { }
+
+    /**
+     * @param styleKey the style attribute in the high 32 bits and the style resource in the low ones
+     * @return the cache shared by the drawables with the given style
+     */
+    static TooltipPathCache get(final long styleKey) {
+        final Long key = styleKey;
+        TooltipPathCache cache = CACHES.get(key);
+        if (null == cache) {
+            cache = new TooltipPathCache();
+            CACHES.put(key, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * @return the entry with the given key, or null
+     */
+    @Nullable
+    Entry find(
+        final int width, final int height, final int gravity, final int arrowX, final int arrowY, final int padding,
+        final float radius, final int arrowWeight) {
+        for (Entry entry : mEntries) {
+            if (null != entry && entry.matches(width, height, gravity, arrowX, arrowY, padding, radius, arrowWeight)) {
+                entry.lastUsed = ++mClock;
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Add a new entry for the given key, replacing the least recently used one if the cache is full
+     *
+     * @return the new entry, with an empty path which must be built by the caller
+     */
+    @NonNull
+    Entry add(
+        final int width, final int height, final int gravity, final int arrowX, final int arrowY, final int padding,
+        final float radius, final int arrowWeight) {
+        int index = 0;
+        for (int i = 0; i < mEntries.length; i++) {
+            if (null == mEntries[i]) {
+                index = i;
+                break;
+            } else if (mEntries[i].lastUsed < mEntries[index].lastUsed) {
+                index = i;
+            }
+        }
+
+        final Entry entry = new Entry(width, height, gravity, arrowX, arrowY, padding, radius, arrowWeight);
+        entry.lastUsed = ++mClock;
+        mEntries[index] = entry;
+        return entry;
+    }
+}
@@ -0,0 +1,276 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.graphics.Typeface;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.view.AsyncLayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewOutlineProvider;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static android.util.Log.VERBOSE;
+import static it.sephiroth.android.library.tooltip.Utils.log;
+
+/**
+ * Recycles the inflated tooltip contents and overlays of an Activity.<br />
+ * Contents are keyed by layout resource and style, overlays by their style. Recycled instances are
+ * reset before being released to the pool. The TooltipView objects themselves are never reused because
+ * callers can keep a reference to them after they're removed.<br />
+ * The pool can be filled in advance with {@link #prewarm(Key, int)}, which inflates the contents on a
+ * background thread.
+ */
+final class TooltipPool {
+    private static final String TAG = "TooltipPool";
+    static final int DEFAULT_CAPACITY = 4;
+    private static int sCapacity = DEFAULT_CAPACITY;
+    private static int sHitCount;
+    private static int sMissCount;
+
+    /**
+     * Inflated tooltip content, together with its background drawable and the inflated values of the
+     * properties changed by the tooltips
+     */
+    static final class Content {
+        final Key key;
+        final View view;
+        final TextView textView;
+        final TooltipTextDrawable drawable;
+        final ColorStateList textColors;
+        final Typeface typeface;
+        final int maxWidth;
+        final int layerType;
+        final float elevation;
+        final ViewOutlineProvider outlineProvider;
+
+        Content(@NonNull final Key key, @NonNull final View view, @Nullable final TooltipTextDrawable drawable) {
+            this.key = key;
+            this.view = view;
+            this.textView = (TextView) view.findViewById(android.R.id.text1);
+            this.drawable = drawable;
+            this.textColors = textView.getTextColors();
+            this.typeface = textView.getTypeface();
+            this.maxWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? textView.getMaxWidth() : Integer.MAX_VALUE;
+            this.layerType = view.getLayerType();
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                this.elevation = textView.getElevation();
+                this.outlineProvider = textView.getOutlineProvider();
+            } else {
+                this.elevation = 0;
+                this.outlineProvider = null;
+            }
+        }
+
+        void reset() {
+            // a running animation would keep changing the next tooltip using this content
+            view.animate().cancel();
+            textView.animate().cancel();
+            view.setTranslationX(0);
+            view.setTranslationY(0);
+            view.setAlpha(1);
+            view.setVisibility(View.VISIBLE);
+            textView.setTranslationX(0);
+            textView.setTranslationY(0);
+            textView.setText(null);
+            textView.setTextColor(textColors);
+            textView.setTypeface(typeface);
+            textView.setMaxWidth(maxWidth);
+
+            // a layer promoted by an interrupted animation
+            view.setTag(R.id.ttlm_layer_state, null);
+            view.setLayerType(layerType, null);
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                textView.setElevation(elevation);
+                textView.setOutlineProvider(outlineProvider);
+            }
+        }
+    }
+
+    static final class Key {
+        final Context context;
+        final int layoutRes;
+        final int defStyleAttr;
+        final int defStyleRes;
+        final boolean customView;
+
+        Key(final Context context, final int layoutRes, final int defStyleAttr, final int defStyleRes, final boolean customView) {
+            this.context = context;
+            this.layoutRes = layoutRes;
+            this.defStyleAttr = defStyleAttr;
+            this.defStyleRes = defStyleRes;
+            this.customView = customView;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return context == other.context
+                && layoutRes == other.layoutRes
+                && defStyleAttr == other.defStyleAttr
+                && defStyleRes == other.defStyleRes
+                && customView == other.customView;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(context);
+            result = 31 * result + layoutRes;
+            result = 31 * result + defStyleAttr;
+            result = 31 * result + defStyleRes;
+            result = 31 * result + (customView ? 1 : 0);
+            return result;
+        }
+    }
+
+    private final HashMap<Key, ArrayList<Content>> mContents = new HashMap<>();
+    private final HashMap<Key, ArrayList<TooltipOverlay>> mOverlays = new HashMap<>();
+    private final HashMap<Key, Integer> mPending = new HashMap<>();
+
+    /**
+     * @param capacity max number of recycled instances kept for each layout and style. 0 disables the pool
+     */
+    static void setCapacity(final int capacity) {
+        sCapacity = Math.max(0, capacity);
+    }
+
+    static int getCapacity() {
+        return sCapacity;
+    }
+
+    static int getHitCount() {
+        return sHitCount;
+    }
+
+    static int getMissCount() {
+        return sMissCount;
+    }
+
+    @Nullable
+    Content acquireContent(@NonNull final Key key) {
+        return acquire(mContents, key);
+    }
+
+    void releaseContent(@NonNull final Content content) {
+        content.reset();
+        release(mContents, content.key, content);
+    }
+
+    @Nullable
+    TooltipOverlay acquireOverlay(@NonNull final Key key) {
+        return acquire(mOverlays, key);
+    }
+
+    void releaseOverlay(@NonNull final Key key, @NonNull final TooltipOverlay overlay) {
+        overlay.setTranslationX(0);
+        overlay.setTranslationY(0);
+        overlay.setAlpha(1);
+        release(mOverlays, key, overlay);
+    }
+
+    /**
+     * Inflate on a background thread up to {@code count} contents for the given key and release
+     * them to the pool. Contents already pooled or still being inflated are taken into account.
+     *
+     * @return the number of contents being inflated
+     */
+    int prewarm(@NonNull final Key key, final int count) {
+        final ArrayList<Content> list = mContents.get(key);
+        final int pooled = (null != list ? list.size() : 0) + getPending(key);
+        final int total = Math.min(count, sCapacity - pooled);
+
+        if (total <= 0) {
+            return 0;
+        }
+
+        log(TAG, VERBOSE, "prewarm %d contents", total);
+        mPending.put(key, getPending(key) + total);
+
+        final AsyncLayoutInflater inflater = new AsyncLayoutInflater(key.context);
+        final AsyncLayoutInflater.OnInflateFinishedListener callback = new AsyncLayoutInflater.OnInflateFinishedListener() {
+            @Override
+            public void onInflateFinished(final View view, final int resid, final ViewGroup parent) {
+                if (!mPending.containsKey(key)) {
+                    // the pool has been cleared in the meantime
+                    return;
+                }
+
+                final int pending = getPending(key) - 1;
+                if (pending > 0) {
+                    mPending.put(key, pending);
+                } else {
+                    mPending.remove(key);
+                }
+
+                final TooltipTextDrawable drawable =
+                    key.customView ? null : new TooltipTextDrawable(key.context, key.defStyleAttr, key.defStyleRes);
+                release(mContents, key, new Content(key, view, drawable));
+            }
+        };
+
+        for (int i = 0; i < total; i++) {
+            inflater.inflate(key.layoutRes, null, callback);
+        }
+        return total;
+    }
+
+    private int getPending(final Key key) {
+        final Integer pending = mPending.get(key);
+        return null != pending ? pending : 0;
+    }
+
+    int size() {
+        int size = 0;
+        for (ArrayList<Content> list : mContents.values()) {
+            size += list.size();
+        }
+        for (ArrayList<TooltipOverlay> list : mOverlays.values()) {
+            size += list.size();
+        }
+        return size;
+    }
+
+    void clear() {
+        mContents.clear();
+        mOverlays.clear();
+        mPending.clear();
+    }
+
+    @Nullable
+    private static <T> T acquire(final HashMap<Key, ArrayList<T>> map, final Key key) {
+        final ArrayList<T> list = map.get(key);
+        if (null != list && !list.isEmpty()) {
+            sHitCount++;
+            return list.remove(list.size() - 1);
+        }
+        sMissCount++;
+        return null;
+    }
+
+    private static <T> void release(final HashMap<Key, ArrayList<T>> map, final Key key, final T item) {
+        ArrayList<T> list = map.get(key);
+        if (null == list) {
+            list = new ArrayList<>(sCapacity);
+            map.put(key, list);
+        }
+
+        if (list.size() < sCapacity && !list.contains(item)) {
+            list.add(item);
+        } else {
+            log(TAG, VERBOSE, "pool is full, dropping %s", item);
+        }
+    }
+}
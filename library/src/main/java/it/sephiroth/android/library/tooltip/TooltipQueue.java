@@ -0,0 +1,86 @@
+package it.sephiroth.android.library.tooltip;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tooltips waiting for a free slot of the window budget, ordered by priority and, for the same priority,
+ * by arrival.<br />
+ * It doesn't depend on the android framework, entries only need to expose their id and priority.
+ */
+final class TooltipQueue<T extends TooltipQueue.Entry> {
+    private final ArrayList<T> mEntries = new ArrayList<>();
+
+    interface Entry {
+        int getTooltipId();
+
+        int getPriority();
+    }
+
+    void add(final T entry) {
+        int index = mEntries.size();
+        for (int i = 0; i < mEntries.size(); i++) {
+            if (mEntries.get(i).getPriority() < entry.getPriority()) {
+                index = i;
+                break;
+            }
+        }
+        mEntries.add(index, entry);
+    }
+
+    boolean remove(final T entry) {
+        return mEntries.remove(entry);
+    }
+
+    /**
+     * Remove all the entries with the given id
+     *
+     * @return the removed entries
+     */
+    List<T> remove(final int tooltipId) {
+        final ArrayList<T> result = new ArrayList<>();
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            if (mEntries.get(i).getTooltipId() == tooltipId) {
+                result.add(0, mEntries.remove(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the removed entries, in queue order
+     */
+    List<T> removeAll() {
+        final ArrayList<T> result = new ArrayList<>(mEntries);
+        mEntries.clear();
+        return result;
+    }
+
+    /**
+     * @return the entry with the highest priority, removed from the queue, or null if the queue is empty
+     */
+    T poll() {
+        return mEntries.isEmpty() ? null : mEntries.remove(0);
+    }
+
+    boolean contains(final T entry) {
+        return mEntries.contains(entry);
+    }
+
+    boolean contains(final int tooltipId) {
+        for (int i = 0; i < mEntries.size(); i++) {
+            if (mEntries.get(i).getTooltipId() == tooltipId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isEmpty() {
+        return mEntries.isEmpty();
+    }
+
+    int size() {
+        return mEntries.size();
+    }
+}
@@ -0,0 +1,150 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+
+import java.util.WeakHashMap;
+
+import static android.util.Log.VERBOSE;
+import static it.sephiroth.android.library.tooltip.Utils.log;
+
+/**
+ * Keeps track of the tooltips shown in an Activity window, from {@link Tooltip.TooltipView#show()} until they're
+ * removed, indexed by their id, and owns the Activity {@link TooltipPool}. There's one tooltip per id: showing
+ * a tooltip removes the one previously shown with the same id.<br />
+ * Registries are released automatically once their Activity is destroyed.
+ */
+final class TooltipRegistry {
+    private static final String TAG = "TooltipRegistry";
+    private static final WeakHashMap<Activity, TooltipRegistry> REGISTRIES = new WeakHashMap<>();
+    private static Application.ActivityLifecycleCallbacks sLifecycleCallbacks;
+
+    private final SparseArray<Tooltip.TooltipView> mTooltips = new SparseArray<>();
+    private final TooltipPool mPool = new TooltipPool();
+
+    private TooltipRegistry() { }
+
+    /**
+     * @param context the tooltip context
+     * @param create  true to create the registry if it doesn't exist yet
+     * @return the registry of the context Activity, or null
+     */
+    @Nullable
+    static TooltipRegistry get(@Nullable final Context context, final boolean create) {
+        final Activity activity = Utils.getActivity(context);
+        if (null == activity) {
+            return null;
+        }
+
+        TooltipRegistry registry = REGISTRIES.get(activity);
+        if (null == registry && create) {
+            registerLifecycleCallbacks(activity.getApplication());
+            registry = new TooltipRegistry();
+            REGISTRIES.put(activity, registry);
+        }
+        return registry;
+    }
+
+    void add(@NonNull final Tooltip.TooltipView tooltip) {
+        final Tooltip.TooltipView displaced = mTooltips.get(tooltip.getTooltipId());
+        if (displaced == tooltip) {
+            return;
+        }
+
+        mTooltips.put(tooltip.getTooltipId(), tooltip);
+        if (null != displaced) {
+            // out of reach of remove and removeAll once replaced
+            log(TAG, VERBOSE, "[%d] replaced, removing the previous one", tooltip.getTooltipId());
+            displaced.remove();
+        }
+    }
+
+    void remove(@NonNull final Tooltip.TooltipView tooltip) {
+        final int index = mTooltips.indexOfKey(tooltip.getTooltipId());
+        if (index >= 0 && mTooltips.valueAt(index) == tooltip) {
+            mTooltips.removeAt(index);
+        }
+    }
+
+    @Nullable
+    Tooltip.TooltipView get(final int tooltipId) {
+        return mTooltips.get(tooltipId);
+    }
+
+    @NonNull
+    TooltipPool getPool() {
+        return mPool;
+    }
+
+    int size() {
+        return mTooltips.size();
+    }
+
+    /**
+     * Remove all the registered tooltips
+     *
+     * @return the number of tooltips removed
+     */
+    int removeAll() {
+        final int size = mTooltips.size();
+        // removing a tooltip unregisters it
+        for (int i = size - 1; i >= 0; i--) {
+            if (i < mTooltips.size()) {
+                final Tooltip.TooltipView tooltip = mTooltips.valueAt(i);
+                log(TAG, VERBOSE, "removing: %d", tooltip.getTooltipId());
+                tooltip.remove();
+            }
+        }
+        mTooltips.clear();
+        return size;
+    }
+
+    private static void registerLifecycleCallbacks(@Nullable final Application application) {
+        if (null != sLifecycleCallbacks || null == application) {
+            return;
+        }
+
+        sLifecycleCallbacks = new Application.ActivityLifecycleCallbacks() {
+            @Override
+            public void onActivityCreated(final Activity activity, final Bundle savedInstanceState) {
+            }
+
+            @Override
+            public void onActivityStarted(final Activity activity) {
+            }
+
+            @Override
+            public void onActivityResumed(final Activity activity) {
+            }
+
+            @Override
+            public void onActivityPaused(final Activity activity) {
+            }
+
+            @Override
+            public void onActivityStopped(final Activity activity) {
+            }
+
+            @Override
+            public void onActivitySaveInstanceState(final Activity activity, final Bundle outState) {
+            }
+
+            @Override
+            public void onActivityDestroyed(final Activity activity) {
+                final TooltipRegistry registry = REGISTRIES.remove(activity);
+                if (null != registry) {
+                    log(TAG, VERBOSE, "releasing %d tooltips", registry.size());
+                    registry.mTooltips.clear();
+                    registry.mPool.clear();
+                }
+                TooltipTimer.get().cancelAll(activity);
+            }
+        };
+        application.registerActivityLifecycleCallbacks(sLifecycleCallbacks);
+    }
+}
@@ -0,0 +1,70 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.view.View;
+import android.view.ViewPropertyAnimator;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.Interpolator;
+
+/**
+ * Alpha and translation animations through a {@link ViewPropertyAnimator} without any listener, update listener
+ * or start/end action. Some platform versions run such animations of hardware accelerated views on the render
+ * thread, which keeps them smooth while the main thread is busy, but the public framework doesn't guarantee it.<br />
+ * Since there's no listener, callers track the animation end themselves with a {@link TooltipTimer} timeout of
+ * the same duration, which is only accurate to {@link TooltipTimer#TICK_MS}.
+ * Used on API 21+ for hardware accelerated views, elsewhere callers fall back to the regular animators.
+ */
+final class TooltipRenderAnimator {
+    private static final Interpolator INTERPOLATOR = new AccelerateDecelerateInterpolator();
+
+    private TooltipRenderAnimator() { }
+
+    /**
+     * @return true if the animations of the given view should use a listener-less ViewPropertyAnimator
+     */
+    static boolean isSupported(@NonNull final View view) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && view.isHardwareAccelerated();
+    }
+
+    @TargetApi (Build.VERSION_CODES.LOLLIPOP)
+    static void alpha(@NonNull final View view, final float value, final long duration) {
+        prepare(view, duration).alpha(value).start();
+    }
+
+    @TargetApi (Build.VERSION_CODES.LOLLIPOP)
+    static void translation(@NonNull final View view, final boolean vertical, final float value, final long duration) {
+        final ViewPropertyAnimator animator = prepare(view, duration);
+        if (vertical) {
+            animator.translationY(value);
+        } else {
+            animator.translationX(value);
+        }
+        animator.start();
+    }
+
+    /**
+     * @return the interpolated fraction of the animations started by this class
+     */
+    static float getInterpolation(final float fraction) {
+        return INTERPOLATOR.getInterpolation(fraction);
+    }
+
+    static void cancel(@NonNull final View view) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            view.animate().cancel();
+        }
+    }
+
+    @TargetApi (Build.VERSION_CODES.LOLLIPOP)
+    private static ViewPropertyAnimator prepare(final View view, final long duration) {
+        // any listener would move the animation back to the main thread
+        return view.animate()
+            .setListener(null)
+            .setUpdateListener(null)
+            .setStartDelay(0)
+            .setInterpolator(INTERPOLATOR)
+            .setDuration(duration);
+    }
+}
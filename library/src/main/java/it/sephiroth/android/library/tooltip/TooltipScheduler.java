@@ -0,0 +1,343 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.view.View;
+
+import java.util.ArrayList;
+
+import static android.util.Log.INFO;
+import static android.util.Log.VERBOSE;
+import static android.util.Log.WARN;
+import static it.sephiroth.android.library.tooltip.Utils.log;
+
+/**
+ * Shows a sequence of tooltips one after the other, for instance an onboarding tour.<br />
+ * While a step is visible the next one is already created and prepared in background (text and layout
+ * inflation, see {@link Tooltip#prewarm(Context, int, int, int)}), so it can be shown as soon as the
+ * current step is removed.<br />
+ * Steps are shown in order of priority, then in the order they've been added.
+ * <p>
+ * Usage:
+ * <pre>
+ * new TooltipScheduler(context)
+ *     .add(new Tooltip.Builder(1).anchor(view1, Tooltip.Gravity.BOTTOM).text("First").build())
+ *     .add(new Tooltip.Builder(2).anchor(view2, Tooltip.Gravity.TOP).text("Second").build())
+ *     .start();
+ * </pre>
+ */
+@SuppressWarnings ("unused")
+@MainThread
+public final class TooltipScheduler {
+    private static final String TAG = "TooltipScheduler";
+
+    public interface Listener {
+        /**
+         * A step has been attached to the window
+         *
+         * @param step the step index
+         */
+        void onStepShown(TooltipScheduler scheduler, Tooltip.TooltipView tooltip, int step);
+
+        /**
+         * @param cancelled true if the sequence has been cancelled before reaching the last step
+         */
+        void onFinished(TooltipScheduler scheduler, boolean cancelled);
+    }
+
+    private static final class Step {
+        final Tooltip.Builder builder;
+        final int priority;
+
+        Step(final Tooltip.Builder builder, final int priority) {
+            this.builder = builder;
+            this.priority = priority;
+        }
+    }
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final ArrayList<Step> mSteps = new ArrayList<>();
+    private Listener mListener;
+    private Tooltip.TooltipViewImpl mCurrent;
+    private Tooltip.TooltipViewImpl mNext;
+    private int mIndex = -1;
+    private boolean mRunning;
+
+    private final View.OnAttachStateChangeListener mAttachListener = new View.OnAttachStateChangeListener() {
+        @Override
+        public void onViewAttachedToWindow(final View v) {
+            if (v == mCurrent && null != mListener) {
+                mListener.onStepShown(TooltipScheduler.this, mCurrent, mIndex);
+            }
+        }
+
+        @Override
+        public void onViewDetachedFromWindow(final View v) {
+            v.removeOnAttachStateChangeListener(this);
+            if (v == mCurrent) {
+                showNext();
+            }
+        }
+    };
+
+    public TooltipScheduler(@NonNull final Context context) {
+        mContext = context;
+    }
+
+    public TooltipScheduler setListener(@Nullable final Listener listener) {
+        mListener = listener;
+        return this;
+    }
+
+    /**
+     * Add a step with the default priority (0)
+     */
+    public TooltipScheduler add(@NonNull final Tooltip.Builder builder) {
+        return add(builder, 0);
+    }
+
+    /**
+     * Add a step. Steps with a higher priority are shown first, steps with the same priority
+     * in the order they've been added. Steps can be added while the sequence is running.
+     */
+    public TooltipScheduler add(@NonNull final Tooltip.Builder builder, final int priority) {
+        int index = mSteps.size();
+        for (int i = mIndex + 1; i < mSteps.size(); i++) {
+            if (mSteps.get(i).priority < priority) {
+                index = i;
+                break;
+            }
+        }
+        mSteps.add(index, new Step(builder, priority));
+
+        if (mRunning && index == mIndex + 1) {
+            // the prepared step is no longer the next one
+            discardNext();
+            prepareNext();
+        }
+        return this;
+    }
+
+    /**
+     * Show the first step
+     */
+    public void start() {
+        if (mRunning) {
+            return;
+        }
+        log(TAG, INFO, "start (%d steps)", mSteps.size());
+        mRunning = true;
+        mIndex = -1;
+        showNext();
+    }
+
+    /**
+     * Hide the current step and show the next one
+     */
+    public void skip() {
+        if (!mRunning || null == mCurrent) {
+            return;
+        }
+
+        if (mCurrent.isAttached()) {
+            // the next step is shown once the current one is removed
+            mCurrent.hide();
+        } else {
+            mCurrent.removeOnAttachStateChangeListener(mAttachListener);
+            mCurrent.remove();
+            showNext();
+        }
+    }
+
+    /**
+     * Hide the current step and jump to the next step with the given tooltip id
+     *
+     * @return false if there isn't such a step
+     */
+    public boolean skipTo(final int tooltipId) {
+        if (!mRunning) {
+            return false;
+        }
+
+        for (int i = mIndex + 1; i < mSteps.size(); i++) {
+            if (mSteps.get(i).builder.id == tooltipId) {
+                if (i > mIndex + 1) {
+                    discardNext();
+                    mIndex = i - 1;
+                    prepareNext();
+                }
+                skip();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Hide the current step and stop the sequence
+     */
+    public void cancel() {
+        if (!mRunning) {
+            return;
+        }
+
+        log(TAG, INFO, "cancel");
+        discardNext();
+
+        if (null != mCurrent) {
+            mCurrent.removeOnAttachStateChangeListener(mAttachListener);
+            if (mCurrent.isAttached()) {
+                mCurrent.hide();
+            } else {
+                mCurrent.remove();
+            }
+            mCurrent = null;
+        }
+        finish(true);
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * @return the index of the current step, or -1
+     */
+    public int getCurrentStep() {
+        return mRunning ? mIndex : -1;
+    }
+
+    public int getStepCount() {
+        return mSteps.size();
+    }
+
+    private void showNext() {
+        mCurrent = null;
+
+        if (!mRunning) {
+            return;
+        }
+
+        if (mIndex + 1 >= mSteps.size()) {
+            finish(false);
+            return;
+        }
+
+        mIndex++;
+        final Tooltip.TooltipViewImpl tooltip = null != mNext ? mNext : create(mSteps.get(mIndex));
+        mNext = null;
+
+        log(TAG, VERBOSE, "showing step %d", mIndex);
+        mCurrent = tooltip;
+        tooltip.addOnAttachStateChangeListener(mAttachListener);
+        tooltip.show();
+
+        if (!tooltip.isShowRequested()) {
+            // dropped or nowhere to attach to, it won't ever detach
+            onStepFailed(tooltip);
+        }
+
+        prepareNext();
+    }
+
+    /**
+     * The step won't be attached, or has been attached but can't be laid out: remove it and go on with the
+     * next one. Posted since failures are reported during show() or during the layout pass.
+     */
+    private void onStepFailed(final Tooltip.TooltipViewImpl tooltip) {
+        if (tooltip != mCurrent) {
+            return;
+        }
+
+        log(TAG, WARN, "step %d failed", mIndex);
+        tooltip.removeOnAttachStateChangeListener(mAttachListener);
+        mCurrent = null;
+
+        mHandler.post(
+            new Runnable() {
+                @Override
+                public void run() {
+                    tooltip.remove();
+                    if (mRunning && null == mCurrent) {
+                        showNext();
+                    }
+                }
+            });
+    }
+
+    private void prepareNext() {
+        if (null == mNext && mIndex + 1 < mSteps.size()) {
+            mNext = create(mSteps.get(mIndex + 1));
+            mNext.prepare();
+        }
+    }
+
+    private void discardNext() {
+        if (null != mNext) {
+            mNext.remove();
+            mNext = null;
+        }
+    }
+
+    private void finish(final boolean cancelled) {
+        log(TAG, INFO, "finish. cancelled: %b", cancelled);
+        mRunning = false;
+        mIndex = -1;
+
+        if (null != mListener) {
+            mListener.onFinished(this, cancelled);
+        }
+    }
+
+    private Tooltip.TooltipViewImpl create(final Step step) {
+        final Tooltip.TooltipViewImpl tooltip = (Tooltip.TooltipViewImpl) Tooltip.make(mContext, step.builder);
+        tooltip.setCallback(new StepCallback(step.builder.closeCallback));
+        return tooltip;
+    }
+
+    /**
+     * Forwards the events to the step callback. Steps which failed to show are removed, so the
+     * sequence can go on with the next one.
+     */
+    private final class StepCallback implements Tooltip.Callback {
+        private final Tooltip.Callback mCallback;
+
+        StepCallback(@Nullable final Tooltip.Callback callback) {
+            mCallback = callback;
+        }
+
+        @Override
+        public void onTooltipClose(final Tooltip.TooltipView tooltip, final boolean fromUser, final boolean containsTouch) {
+            if (null != mCallback) {
+                mCallback.onTooltipClose(tooltip, fromUser, containsTouch);
+            }
+        }
+
+        @Override
+        public void onTooltipFailed(final Tooltip.TooltipView view) {
+            if (null != mCallback) {
+                mCallback.onTooltipFailed(view);
+            }
+            onStepFailed((Tooltip.TooltipViewImpl) view);
+        }
+
+        @Override
+        public void onTooltipShown(final Tooltip.TooltipView view) {
+            if (null != mCallback) {
+                mCallback.onTooltipShown(view);
+            }
+        }
+
+        @Override
+        public void onTooltipHidden(final Tooltip.TooltipView view) {
+            if (null != mCallback) {
+                mCallback.onTooltipHidden(view);
+            }
+        }
+    }
+}
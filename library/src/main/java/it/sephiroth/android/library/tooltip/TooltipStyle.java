@@ -0,0 +1,180 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.content.ComponentCallbacks;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Color;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+
+import java.util.HashMap;
+import java.util.WeakHashMap;
+
+import static android.util.Log.INFO;
+import static android.util.Log.VERBOSE;
+import static it.sephiroth.android.library.tooltip.Utils.log;
+
+/**
+ * The resolved TooltipLayout attributes of a style. Styles are resolved once per theme and style pair
+ * and shared by all the tooltips and drawables using them.<br />
+ * The cache is keyed by the theme instance, so a recreated Activity resolves its styles again, and it is
+ * cleared, with the bitmaps drawn from them, when the configuration changes.
+ */
+@MainThread
+final class TooltipStyle {
+    private static final String TAG = "TooltipStyle";
+    static final int DEFAULT_PADDING = 30;
+    static final int DEFAULT_CORNER_RADIUS = 4;
+    static final int DEFAULT_STROKE_WEIGHT = 2;
+    private static final WeakHashMap<Resources.Theme, Cache> CACHES = new WeakHashMap<>();
+    private static boolean sCallbacksRegistered;
+
+    final int padding;
+    final int textAppearance;
+    final int textGravity;
+    final float elevation;
+    @Nullable final String font;
+    final int overlayStyle;
+    final float cornerRadius;
+    final int strokeWeight;
+    final int backgroundColor;
+    final int strokeColor;
+    final float arrowRatio;
+
+    /**
+     * The resolved TooltipOverlay attributes of a style
+     */
+    static final class Overlay {
+        final int color;
+        final int repeatCount;
+        final long duration;
+        final int margin;
+
+        private Overlay(final TypedArray array) {
+            int color = Color.BLACK;
+            int repeatCount = 1;
+            long duration = 400;
+
+            for (int i = 0; i < array.getIndexCount(); i++) {
+                int index = array.getIndex(i);
+
+                if (index == R.styleable.TooltipOverlay_android_color) {
+                    color = array.getColor(index, 0);
+
+                } else if (index == R.styleable.TooltipOverlay_ttlm_repeatCount) {
+                    repeatCount = array.getInt(index, 1);
+
+                } else if (index == R.styleable.TooltipOverlay_android_alpha) {
+                    int alpha = (int) (array.getFloat(index, Color.alpha(color) / 255f) * 255);
+                    color = (color & 0x00ffffff) | (alpha << 24);
+
+                } else if (index == R.styleable.TooltipOverlay_ttlm_duration) {
+                    duration = array.getInt(index, 400);
+                }
+            }
+
+            this.color = color;
+            this.repeatCount = repeatCount;
+            this.duration = duration;
+            this.margin = array.getDimensionPixelSize(R.styleable.TooltipOverlay_android_layout_margin, 0);
+        }
+    }
+
+    private static final class Cache {
+        final HashMap<Long, TooltipStyle> styles = new HashMap<>();
+        final SparseArray<Overlay> overlays = new SparseArray<>();
+    }
+
+    private TooltipStyle(final TypedArray theme) {
+        padding = theme.getDimensionPixelSize(R.styleable.TooltipLayout_ttlm_padding, DEFAULT_PADDING);
+        textAppearance = theme.getResourceId(R.styleable.TooltipLayout_android_textAppearance, 0);
+        textGravity =
+            theme.getInt(R.styleable.TooltipLayout_android_gravity, android.view.Gravity.TOP | android.view.Gravity.START);
+        elevation = theme.getDimension(R.styleable.TooltipLayout_ttlm_elevation, 0);
+        overlayStyle = theme.getResourceId(R.styleable.TooltipLayout_ttlm_overlayStyle, R.style.ToolTipOverlayDefaultStyle);
+        font = theme.getString(R.styleable.TooltipLayout_ttlm_font);
+        cornerRadius = theme.getDimensionPixelSize(R.styleable.TooltipLayout_ttlm_cornerRadius, DEFAULT_CORNER_RADIUS);
+        strokeWeight = theme.getDimensionPixelSize(R.styleable.TooltipLayout_ttlm_strokeWeight, DEFAULT_STROKE_WEIGHT);
+        backgroundColor = theme.getColor(R.styleable.TooltipLayout_ttlm_backgroundColor, 0);
+        strokeColor = theme.getColor(R.styleable.TooltipLayout_ttlm_strokeColor, 0);
+        arrowRatio = theme.getFloat(R.styleable.TooltipLayout_ttlm_arrowRatio, TooltipTextDrawable.ARROW_RATIO_DEFAULT);
+    }
+
+    /**
+     * @return the TooltipLayout style for the given default style attribute and resource
+     */
+    @NonNull
+    static TooltipStyle get(@NonNull final Context context, final int defStyleAttr, final int defStyleRes) {
+        final Cache cache = getCache(context);
+        final Long key = ((long) defStyleAttr << 32) | (defStyleRes & 0xffffffffL);
+        TooltipStyle style = cache.styles.get(key);
+
+        if (null == style) {
+            final TypedArray array =
+                context.getTheme().obtainStyledAttributes(null, R.styleable.TooltipLayout, defStyleAttr, defStyleRes);
+            style = new TooltipStyle(array);
+            array.recycle();
+            cache.styles.put(key, style);
+            log(TAG, VERBOSE, "resolved style %x/%x", defStyleAttr, defStyleRes);
+        }
+        return style;
+    }
+
+    /**
+     * @return the TooltipOverlay style for the given style resource
+     */
+    @NonNull
+    static Overlay getOverlay(@NonNull final Context context, final int styleRes) {
+        final Cache cache = getCache(context);
+        Overlay overlay = cache.overlays.get(styleRes);
+
+        if (null == overlay) {
+            final TypedArray array = context.getTheme().obtainStyledAttributes(styleRes, R.styleable.TooltipOverlay);
+            overlay = new Overlay(array);
+            array.recycle();
+            cache.overlays.put(styleRes, overlay);
+            log(TAG, VERBOSE, "resolved overlay style %x", styleRes);
+        }
+        return overlay;
+    }
+
+    static void clear() {
+        log(TAG, INFO, "clear");
+        CACHES.clear();
+        TooltipBitmapCache.clear();
+    }
+
+    private static Cache getCache(final Context context) {
+        registerCallbacks(context);
+
+        final Resources.Theme theme = context.getTheme();
+        Cache cache = CACHES.get(theme);
+        if (null == cache) {
+            cache = new Cache();
+            CACHES.put(theme, cache);
+        }
+        return cache;
+    }
+
+    private static void registerCallbacks(final Context context) {
+        if (sCallbacksRegistered) {
+            return;
+        }
+
+        sCallbacksRegistered = true;
+        context.getApplicationContext().registerComponentCallbacks(
+            new ComponentCallbacks() {
+                @Override
+                public void onConfigurationChanged(final Configuration newConfig) {
+                    clear();
+                }
+
+                @Override
+                public void onLowMemory() { }
+            });
+    }
+}
@@ -2,7 +2,8 @@ package it.sephiroth.android.library.tooltip;
 
 import android.annotation.TargetApi;
 import android.content.Context;
-import android.content.res.TypedArray;
+import android.graphics.Bitmap;
+import android.graphics.BlurMaskFilter;
 import android.graphics.Canvas;
 import android.graphics.ColorFilter;
 import android.graphics.Outline;
@@ -14,60 +15,223 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
-class TooltipTextDrawable extends Drawable {
+import java.util.WeakHashMap;
+
+class TooltipTextDrawable extends Drawable implements TooltipBitmapCache.Renderer {
     public static final float ARROW_RATIO_DEFAULT = 1.4f;
     public static final float ALPHA_MAX = 255f;
     static final String TAG = "TooltipTextDrawable";
+    private static final Tooltip.Gravity[] GRAVITIES = Tooltip.Gravity.values();
+    static final int SHADOW_COLOR = 0x44000000;
+    private static final int SHADOW_VARIANT = 1 << 30;
+    private static final WeakHashMap<TooltipStyle, TextState> STATES = new WeakHashMap<>();
     private final RectF rectF;
-    private final Path path;
+    private final TooltipPathCache pathCache;
     private final Point tmpPoint = new Point();
     private final Rect outlineRect = new Rect();
-    private final Paint bgPaint;
-    private final Paint stPaint;
+    private final Rect dirtyRect = new Rect();
+    private TextState state;
+    private boolean mutated;
+    private Paint bgPaint;
+    private Paint stPaint;
     private final float arrowRatio;
     private final float ellipseSize;
-    private Point point;
+    private final Point point = new Point();
+    private boolean hasPoint;
+    private Path bodyPath;
+    private final Path arrowPath = new Path();
+    private final Rect sliceSrc = new Rect();
+    private final Rect sliceDst = new Rect();
+    private final int[] sliceX = new int[4];
+    private final int[] sliceY = new int[4];
+    private boolean bitmapCacheEnabled;
+    private TooltipBitmapCache.Entry bitmapEntry;
+    private final Paint shadowPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final TooltipBitmapCache.Renderer shadowRenderer = new TooltipBitmapCache.Renderer() {
+        @Override
+        public void render(@NonNull final Canvas canvas, final int width, final int height) {
+            renderShadow(canvas, width, height);
+        }
+    };
+    private int shadowRadius;
+    private TooltipBitmapCache.Entry shadowEntry;
     private int padding = 0;
     private int arrowWeight = 0;
     private Tooltip.Gravity gravity;
 
     public TooltipTextDrawable(final Context context, final Tooltip.Builder builder) {
+        this(context, builder.defStyleAttr, builder.defStyleRes);
+    }
 
-        TypedArray theme =
-            context.getTheme().obtainStyledAttributes(null, R.styleable.TooltipLayout, builder.defStyleAttr, builder.defStyleRes);
-        this.ellipseSize = theme.getDimensionPixelSize(R.styleable.TooltipLayout_ttlm_cornerRadius, 4);
-        final int strokeWidth = theme.getDimensionPixelSize(R.styleable.TooltipLayout_ttlm_strokeWeight, 2);
-        final int backgroundColor = theme.getColor(R.styleable.TooltipLayout_ttlm_backgroundColor, 0);
-        final int strokeColor = theme.getColor(R.styleable.TooltipLayout_ttlm_strokeColor, 0);
-        this.arrowRatio = theme.getFloat(R.styleable.TooltipLayout_ttlm_arrowRatio, ARROW_RATIO_DEFAULT);
-        theme.recycle();
+    public TooltipTextDrawable(final Context context, final int defStyleAttr, final int defStyleRes) {
+        this(getState(context, defStyleAttr, defStyleRes));
+    }
 
+    private TooltipTextDrawable(final TextState state) {
+        this.state = state;
+        this.ellipseSize = state.ellipseSize;
+        this.arrowRatio = state.arrowRatio;
+        this.bgPaint = state.bgPaint;
+        this.stPaint = state.stPaint;
         this.rectF = new RectF();
+        this.pathCache = TooltipPathCache.get(state.styleKey);
+    }
 
-        if (backgroundColor != 0) {
-            bgPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-            bgPaint.setColor(backgroundColor);
-            bgPaint.setStyle(Paint.Style.FILL);
-        } else {
-            bgPaint = null;
+    /**
+     * @return the state shared by all the drawables with the same resolved style
+     */
+    private static TextState getState(final Context context, final int defStyleAttr, final int defStyleRes) {
+        final TooltipStyle style = TooltipStyle.get(context, defStyleAttr, defStyleRes);
+        TextState state = STATES.get(style);
+        if (null == state) {
+            state = new TextState(style, ((long) defStyleAttr << 32) | (defStyleRes & 0xffffffffL));
+            STATES.put(style, state);
         }
+        return state;
+    }
 
-        if (strokeColor != 0) {
-            stPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-            stPaint.setColor(strokeColor);
-            stPaint.setStyle(Paint.Style.STROKE);
-            stPaint.setStrokeWidth(strokeWidth);
-        } else {
-            stPaint = null;
+    /**
+     * The immutable style of the drawable: paints, corner radius and arrow ratio. Shared by all the drawables
+     * of the same style until they're {@link #mutate() mutated}.
+     */
+    static final class TextState extends ConstantState {
+        final long styleKey;
+        final float ellipseSize;
+        final float arrowRatio;
+        final Paint bgPaint;
+        final Paint stPaint;
+
+        TextState(final TooltipStyle style, final long styleKey) {
+            this.styleKey = styleKey;
+            this.ellipseSize = style.cornerRadius;
+            this.arrowRatio = style.arrowRatio;
+
+            if (style.backgroundColor != 0) {
+                bgPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+                bgPaint.setColor(style.backgroundColor);
+                bgPaint.setStyle(Paint.Style.FILL);
+            } else {
+                bgPaint = null;
+            }
+
+            if (style.strokeColor != 0) {
+                stPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+                stPaint.setColor(style.strokeColor);
+                stPaint.setStyle(Paint.Style.STROKE);
+                stPaint.setStrokeWidth(style.strokeWeight);
+            } else {
+                stPaint = null;
+            }
+        }
+
+        TextState(final TextState other) {
+            this.styleKey = other.styleKey;
+            this.ellipseSize = other.ellipseSize;
+            this.arrowRatio = other.arrowRatio;
+            this.bgPaint = null != other.bgPaint ? new Paint(other.bgPaint) : null;
+            this.stPaint = null != other.stPaint ? new Paint(other.stPaint) : null;
         }
 
-        path = new Path();
+        @NonNull
+        @Override
+        public Drawable newDrawable() {
+            return new TooltipTextDrawable(this);
+        }
+
+        @Override
+        public int getChangingConfigurations() {
+            return 0;
+        }
+    }
+
+    @Override
+    public ConstantState getConstantState() {
+        return state;
+    }
+
+    /**
+     * Give this drawable its own copy of the paints, so that {@link #setAlpha(int)} doesn't affect the other
+     * drawables of the same style
+     */
+    @NonNull
+    @Override
+    public Drawable mutate() {
+        if (!mutated && super.mutate() == this) {
+            state = new TextState(state);
+            bgPaint = state.bgPaint;
+            stPaint = state.stPaint;
+            mutated = true;
+        }
+        return this;
+    }
+
+    /**
+     * Draw the bubble body from the stretchable bitmap of this style and only the arrow as a path.
+     * Requires an opaque background color.
+     */
+    void setBitmapCacheEnabled(final boolean enabled) {
+        if (enabled != bitmapCacheEnabled) {
+            bitmapCacheEnabled = enabled;
+            if (!enabled) {
+                releaseBitmapCache();
+            }
+            invalidateSelf();
+        }
+    }
+
+    /**
+     * Draw a blurred shadow under the body, for the devices or the views without elevation
+     *
+     * @param radius the blur radius in pixels, 0 to disable the shadow
+     */
+    void setShadowRadius(final int radius) {
+        if (radius != shadowRadius) {
+            shadowRadius = Math.max(0, radius);
+            if (null != shadowEntry) {
+                TooltipBitmapCache.release(shadowEntry);
+                shadowEntry = null;
+            }
+            invalidateSelf();
+        }
+    }
+
+    void releaseBitmapCache() {
+        if (null != bitmapEntry) {
+            TooltipBitmapCache.release(bitmapEntry);
+            bitmapEntry = null;
+        }
+        if (null != shadowEntry) {
+            TooltipBitmapCache.release(shadowEntry);
+            shadowEntry = null;
+        }
     }
 
     @Override
     public void draw(final Canvas canvas) {
+        final Rect bounds = getBounds();
+        if (bounds.isEmpty()) {
+            return;
+        }
+
+        // paths are built at the origin
+        final int saveCount = canvas.save();
+        canvas.translate(bounds.left, bounds.top);
+
+        if (shadowRadius > 0) {
+            drawShadow(canvas, bounds.width(), bounds.height());
+        }
+
+        if (bitmapCacheEnabled && null != bgPaint && bgPaint.getAlpha() == ALPHA_MAX
+            && drawCachedBitmap(canvas, bounds.width(), bounds.height())) {
+            canvas.restoreToCount(saveCount);
+            return;
+        }
+
+        final Path path = getPath(bounds.width(), bounds.height());
+
         if (null != bgPaint) {
             canvas.drawPath(path, bgPaint);
         }
@@ -75,62 +239,338 @@ class TooltipTextDrawable extends Drawable {
         if (null != stPaint) {
             canvas.drawPath(path, stPaint);
         }
+        canvas.restoreToCount(saveCount);
     }
 
     public void setAnchor(final Tooltip.Gravity gravity, int padding, @Nullable Point point) {
-        if (gravity != this.gravity || padding != this.padding || !Utils.equals(this.point, point)) {
+        final boolean pointChanged =
+            (null != point) != hasPoint || (null != point && !this.point.equals(point.x, point.y));
+
+        if (gravity != this.gravity || padding != this.padding || pointChanged) {
             this.gravity = gravity;
             this.padding = padding;
             this.arrowWeight = (int) ((float) padding / arrowRatio);
+            this.hasPoint = null != point;
 
             if (null != point) {
-                this.point = new Point(point);
-            } else {
-                this.point = null;
+                this.point.set(point.x, point.y);
             }
 
-            final Rect bounds = getBounds();
-            if (!bounds.isEmpty()) {
-                calculatePath(getBounds());
+            bodyPath = null;
+
+            if (!getBounds().isEmpty()) {
                 invalidateSelf();
             }
         }
     }
 
-    void calculatePath(Rect outBounds) {
-        int left = outBounds.left + padding;
-        int top = outBounds.top + padding;
-        int right = outBounds.right - padding;
-        int bottom = outBounds.bottom - padding;
+    /**
+     * Draw the body as a nine slice of the style bitmap: the corners are copied as they are, the edges and the
+     * center are stretched from a single pixel row/column. Then the arrow is drawn on top of it.
+     *
+     * @return false if the body is too small to be stretched or the bitmap couldn't be cached
+     */
+    private boolean drawCachedBitmap(final Canvas canvas, final int width, final int height) {
+        final float strokeWidth = null != stPaint ? stPaint.getStrokeWidth() : 0;
+        final int margin = (int) Math.ceil(strokeWidth / 2);
+        final int corner = margin + (int) Math.ceil(ellipseSize + strokeWidth) + 1;
+        final int size = corner * 2 + 1;
+        final int shape = hasPoint && null != gravity ? TooltipPathCache.NO_ARROW : TooltipPathCache.NO_POINT;
+
+        if (width - padding * 2 + margin * 2 < size || height - padding * 2 + margin * 2 < size) {
+            return false;
+        }
+
+        if (null == bitmapEntry || !bitmapEntry.matches(state, size, size, shape)) {
+            // only the body entry, the shadow has already been drawn with its own
+            if (null != bitmapEntry) {
+                TooltipBitmapCache.release(bitmapEntry);
+            }
+            bitmapEntry = TooltipBitmapCache.acquire(state, size, size, shape, this);
+            if (null == bitmapEntry) {
+                return false;
+            }
+        }
+
+        drawNineSlice(
+            canvas, bitmapEntry.bitmap, corner, padding - margin, padding - margin, width - padding + margin,
+            height - padding + margin, null);
+
+        final int arrowGravity = resolveArrow(width, height);
+        if (arrowGravity >= 0) {
+            drawArrow(canvas, width, height, arrowGravity);
+        }
+        return true;
+    }
+
+    /**
+     * Draw a {@code corner * 2 + 1} square bitmap stretched to the given rect: the corners are copied as they are,
+     * the edges and the center are stretched from the middle pixel row/column
+     */
+    private void drawNineSlice(
+        final Canvas canvas, final Bitmap bitmap, final int corner, final int left, final int top, final int right,
+        final int bottom, @Nullable final Paint paint) {
+        sliceX[0] = left;
+        sliceX[1] = left + corner;
+        sliceX[3] = right;
+        sliceX[2] = right - corner;
+        sliceY[0] = top;
+        sliceY[1] = top + corner;
+        sliceY[3] = bottom;
+        sliceY[2] = bottom - corner;
+
+        for (int row = 0; row < 3; row++) {
+            for (int col = 0; col < 3; col++) {
+                sliceSrc.set(
+                    sliceStart(col, corner), sliceStart(row, corner), sliceStart(col + 1, corner), sliceStart(row + 1, corner));
+                sliceDst.set(sliceX[col], sliceY[row], sliceX[col + 1], sliceY[row + 1]);
+                canvas.drawBitmap(bitmap, sliceSrc, sliceDst, paint);
+            }
+        }
+    }
+
+    /**
+     * @return the source coordinate of the given slice edge, the middle slice is one pixel wide
+     */
+    private static int sliceStart(final int index, final int corner) {
+        switch (index) {
+            case 0:
+                return 0;
+            case 1:
+                return corner;
+            case 2:
+                return corner + 1;
+            default:
+                return corner * 2 + 1;
+        }
+    }
+
+    /**
+     * Render the stretchable body: a {@code size x size} bubble with room for the outer half of the stroke
+     */
+    @Override
+    public void render(@NonNull final Canvas canvas, final int width, final int height) {
+        final int margin = null != stPaint ? (int) Math.ceil(stPaint.getStrokeWidth() / 2) : 0;
+        final Path path = new Path();
+        calculatePath(
+            path, width, height, margin, hasPoint && null != gravity ? TooltipPathCache.NO_ARROW : TooltipPathCache.NO_POINT);
+
+        canvas.drawPath(path, bgPaint);
+        if (null != stPaint) {
+            canvas.drawPath(path, stPaint);
+        }
+    }
+
+    /**
+     * Draw the shadow bitmap of the blur radius as a nine slice of the body size, so the blurred corners keep
+     * their shape whatever the body size. The shadow is offset down by half the blur radius and doesn't include
+     * the arrow.
+     */
+    private void drawShadow(final Canvas canvas, final int width, final int height) {
+        final int radius = getShadowRadius();
+        final int bodyWidth = width - padding * 2;
+        final int bodyHeight = height - padding * 2;
+        if (radius <= 0 || bodyWidth <= 0 || bodyHeight <= 0) {
+            return;
+        }
+
+        final int corner = getShadowCorner(radius);
+        final int size = corner * 2 + 1;
+        final int variant = SHADOW_VARIANT | radius;
+
+        if (null == shadowEntry || !shadowEntry.matches(state, size, size, variant)) {
+            if (null != shadowEntry) {
+                TooltipBitmapCache.release(shadowEntry);
+            }
+            shadowEntry = TooltipBitmapCache.acquire(state, size, size, variant, shadowRenderer);
+            if (null == shadowEntry) {
+                return;
+            }
+        }
+
+        final int offset = radius / 2;
+        final int left = padding - radius;
+        final int top = padding - radius + offset;
+        final int right = width - padding + radius;
+        final int bottom = height - padding + radius + offset;
+        shadowPaint.setAlpha(null != bgPaint ? bgPaint.getAlpha() : (int) ALPHA_MAX);
+
+        if (right - left < size || bottom - top < size) {
+            // too small to be sliced
+            sliceDst.set(left, top, right, bottom);
+            canvas.drawBitmap(shadowEntry.bitmap, null, sliceDst, shadowPaint);
+        } else {
+            drawNineSlice(canvas, shadowEntry.bitmap, corner, left, top, right, bottom, shadowPaint);
+        }
+    }
+
+    /**
+     * @return the size of the shadow corner slices: the blur outside the body plus the rounded corner and the
+     * blur inside the body, so the middle row and column aren't affected by the corners
+     */
+    private int getShadowCorner(final int radius) {
+        return radius * 2 + (int) Math.ceil(ellipseSize) + 1;
+    }
+
+    /**
+     * @return the blur radius, limited by the padding so that the shadow isn't clipped by the view
+     */
+    private int getShadowRadius() {
+        return Math.min(shadowRadius, padding * 2 / 3);
+    }
+
+    /**
+     * Render the stretchable blurred body, with room for the blur around it
+     */
+    private void renderShadow(final Canvas canvas, final int width, final int height) {
+        final int radius = getShadowRadius();
+        final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setColor(SHADOW_COLOR);
+        paint.setMaskFilter(new BlurMaskFilter(radius, BlurMaskFilter.Blur.NORMAL));
+
+        rectF.set(radius, radius, width - radius, height - radius);
+        canvas.drawRoundRect(rectF, ellipseSize, ellipseSize, paint);
+    }
+
+    /**
+     * Draw the arrow over the body edge. The filled triangle extends inside the body by the stroke width,
+     * to hide the body stroke under the arrow base, then only the two arrow sides are stroked.
+     */
+    private void drawArrow(final Canvas canvas, final int width, final int height, final int arrowGravity) {
+        final int left = padding;
+        final int top = padding;
+        final int right = width - padding;
+        final int bottom = height - padding;
+        final float inset = null != stPaint ? stPaint.getStrokeWidth() : 0;
+        final Tooltip.Gravity arrow = GRAVITIES[arrowGravity];
+
+        final float x1;
+        final float y1;
+        final float x2;
+        final float y2;
+        final float tipX;
+        final float tipY;
+        float dx = 0;
+        float dy = 0;
+
+        if (arrow == Tooltip.Gravity.BOTTOM || arrow == Tooltip.Gravity.TOP) {
+            x1 = left + tmpPoint.x - arrowWeight;
+            x2 = left + tmpPoint.x + arrowWeight;
+            tipX = left + tmpPoint.x;
+            y1 = arrow == Tooltip.Gravity.BOTTOM ? top : bottom;
+            y2 = y1;
+            tipY = arrow == Tooltip.Gravity.BOTTOM ? 0 : height;
+            dy = arrow == Tooltip.Gravity.BOTTOM ? inset : -inset;
+        } else {
+            y1 = top + tmpPoint.y - arrowWeight;
+            y2 = top + tmpPoint.y + arrowWeight;
+            tipY = top + tmpPoint.y;
+            x1 = arrow == Tooltip.Gravity.LEFT ? right : left;
+            x2 = x1;
+            tipX = arrow == Tooltip.Gravity.LEFT ? width : 0;
+            dx = arrow == Tooltip.Gravity.LEFT ? -inset : inset;
+        }
+
+        arrowPath.reset();
+        arrowPath.moveTo(x1 + dx, y1 + dy);
+        arrowPath.lineTo(x1, y1);
+        arrowPath.lineTo(tipX, tipY);
+        arrowPath.lineTo(x2, y2);
+        arrowPath.lineTo(x2 + dx, y2 + dy);
+        arrowPath.close();
+        canvas.drawPath(arrowPath, bgPaint);
+
+        if (null != stPaint) {
+            arrowPath.reset();
+            arrowPath.moveTo(x1, y1);
+            arrowPath.lineTo(tipX, tipY);
+            arrowPath.lineTo(x2, y2);
+            canvas.drawPath(arrowPath, stPaint);
+        }
+    }
+
+    /**
+     * Compute the clamped arrow point into {@link #tmpPoint}
+     *
+     * @return the arrow gravity ordinal, {@link TooltipPathCache#NO_ARROW} or {@link TooltipPathCache#NO_POINT}
+     */
+    private int resolveArrow(final int width, final int height) {
+        final int left = padding;
+        final int top = padding;
+        final int right = width - padding;
+        final int bottom = height - padding;
+
+        tmpPoint.set(0, 0);
+
+        if (!hasPoint || null == gravity) {
+            return TooltipPathCache.NO_POINT;
+        }
 
         final float maxY = bottom - ellipseSize;
         final float maxX = right - ellipseSize;
         final float minY = top + ellipseSize;
         final float minX = left + ellipseSize;
 
-        if (null != point && null != gravity) {
-            calculatePathWithGravity(outBounds, left, top, right, bottom, maxY, maxX, minY, minX);
-        } else {
-            rectF.set(left, top, right, bottom);
-            path.addRoundRect(rectF, ellipseSize, ellipseSize, Path.Direction.CW);
+        if (isDrawPoint(left, top, right, bottom, maxY, maxX, minY, minX, tmpPoint, point, gravity, arrowWeight)) {
+            clampPoint(left, top, right, bottom, tmpPoint);
+            return gravity.ordinal();
+        }
+        tmpPoint.set(0, 0);
+        return TooltipPathCache.NO_ARROW;
+    }
+
+    /**
+     * @return the bubble path for the given size, from the shared cache
+     */
+    /**
+     * @return the body path of the current geometry. The drawable keeps it until the geometry changes, the
+     * shared cache only lets the drawables with the same geometry build it once
+     */
+    private Path getPath(final int width, final int height) {
+        if (null != bodyPath) {
+            return bodyPath;
+        }
+
+        final int arrowGravity = resolveArrow(width, height);
+        TooltipPathCache.Entry entry =
+            pathCache.find(width, height, arrowGravity, tmpPoint.x, tmpPoint.y, padding, ellipseSize, arrowWeight);
+
+        if (null == entry) {
+            entry = pathCache.add(width, height, arrowGravity, tmpPoint.x, tmpPoint.y, padding, ellipseSize, arrowWeight);
+            calculatePath(entry.path, width, height, padding, arrowGravity);
         }
+
+        bodyPath = entry.path;
+        return bodyPath;
     }
 
-    private void calculatePathWithGravity(
-        final Rect outBounds, final int left, final int top, final int right, final int bottom, final float maxY, final float maxX,
-        final float minY, final float minX) {
-        boolean drawPoint =
-            isDrawPoint(left, top, right, bottom, maxY, maxX, minY, minX, tmpPoint, point, gravity, arrowWeight);
-        clampPoint(left, top, right, bottom, tmpPoint);
+    /**
+     * Build the path at the origin. {@link #tmpPoint} must already contain the clamped arrow point
+     *
+     * @param inset the distance between the bounds and the body
+     */
+    private void calculatePath(
+        final Path path, final int width, final int height, final int inset, final int arrowGravity) {
+        final int left = inset;
+        final int top = inset;
+        final int right = width - inset;
+        final int bottom = height - inset;
+        final boolean drawPoint = arrowGravity >= 0;
 
         path.reset();
 
+        if (arrowGravity == TooltipPathCache.NO_POINT) {
+            rectF.set(left, top, right, bottom);
+            path.addRoundRect(rectF, ellipseSize, ellipseSize, Path.Direction.CW);
+            return;
+        }
+
         // top/left
         path.moveTo(left + ellipseSize, top);
 
         if (drawPoint && gravity == Tooltip.Gravity.BOTTOM) {
             path.lineTo(left + tmpPoint.x - arrowWeight, top);
-            path.lineTo(left + tmpPoint.x, outBounds.top);
+            path.lineTo(left + tmpPoint.x, 0);
             path.lineTo(left + tmpPoint.x + arrowWeight, top);
         }
 
@@ -140,7 +580,7 @@ class TooltipTextDrawable extends Drawable {
 
         if (drawPoint && gravity == Tooltip.Gravity.LEFT) {
             path.lineTo(right, top + tmpPoint.y - arrowWeight);
-            path.lineTo(outBounds.right, top + tmpPoint.y);
+            path.lineTo(width, top + tmpPoint.y);
             path.lineTo(right, top + tmpPoint.y + arrowWeight);
         }
 
@@ -150,7 +590,7 @@ class TooltipTextDrawable extends Drawable {
 
         if (drawPoint && gravity == Tooltip.Gravity.TOP) {
             path.lineTo(left + tmpPoint.x + arrowWeight, bottom);
-            path.lineTo(left + tmpPoint.x, outBounds.bottom);
+            path.lineTo(left + tmpPoint.x, height);
             path.lineTo(left + tmpPoint.x - arrowWeight, bottom);
         }
 
@@ -160,7 +600,7 @@ class TooltipTextDrawable extends Drawable {
 
         if (drawPoint && gravity == Tooltip.Gravity.RIGHT) {
             path.lineTo(left, top + tmpPoint.y + arrowWeight);
-            path.lineTo(outBounds.left, top + tmpPoint.y);
+            path.lineTo(0, top + tmpPoint.y);
             path.lineTo(left, top + tmpPoint.y - arrowWeight);
         }
 
@@ -215,10 +655,36 @@ class TooltipTextDrawable extends Drawable {
         }
     }
 
+    /**
+     * @return the bubble bounds: the body with its stroke and shadow, plus the arrow
+     */
+    @NonNull
+    @Override
+    public Rect getDirtyBounds() {
+        copyBounds(dirtyRect);
+
+        final int margin = (int) Math.ceil((null != stPaint ? stPaint.getStrokeWidth() : 0) / 2);
+        final int shadow = shadowRadius > 0 ? getShadowRadius() * 3 / 2 : 0;
+        final int inset = Math.max(0, padding - Math.max(margin, shadow));
+        final Tooltip.Gravity arrow = hasPoint ? gravity : null;
+
+        dirtyRect.left += arrow == Tooltip.Gravity.RIGHT ? 0 : inset;
+        dirtyRect.top += arrow == Tooltip.Gravity.BOTTOM ? 0 : inset;
+        dirtyRect.right -= arrow == Tooltip.Gravity.LEFT ? 0 : inset;
+        dirtyRect.bottom -= arrow == Tooltip.Gravity.TOP ? 0 : inset;
+        return dirtyRect;
+    }
+
+    @Override
+    public void invalidateSelf() {
+        TooltipInvalidations.record(getDirtyBounds());
+        super.invalidateSelf();
+    }
+
     @Override
     protected void onBoundsChange(final Rect bounds) {
         super.onBoundsChange(bounds);
-        calculatePath(bounds);
+        bodyPath = null;
     }
 
     public float getRadius() {
@@ -227,13 +693,17 @@ class TooltipTextDrawable extends Drawable {
 
     @Override
     public int getAlpha() {
-        return bgPaint.getAlpha();
+        return null != bgPaint ? bgPaint.getAlpha() : (int) ALPHA_MAX;
     }
 
     @Override
     public void setAlpha(final int alpha) {
-        bgPaint.setAlpha(alpha);
-        stPaint.setAlpha(alpha);
+        if (null != bgPaint) {
+            bgPaint.setAlpha(alpha);
+        }
+        if (null != stPaint) {
+            stPaint.setAlpha(alpha);
+        }
     }
 
     @Override
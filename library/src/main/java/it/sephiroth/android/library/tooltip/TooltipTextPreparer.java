@@ -0,0 +1,125 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import static android.util.Log.VERBOSE;
+import static it.sephiroth.android.library.tooltip.Utils.log;
+
+/**
+ * Prepares the tooltip text on a background thread: the html markup is parsed (see {@link HtmlCache})
+ * and the text is laid out once with the tooltip paint and width, so that the text measurement caches
+ * are already warm when the TextView measures it on the main thread.<br />
+ * Results are delivered on the main thread.
+ */
+final class TooltipTextPreparer {
+    private static final String TAG = "TooltipTextPreparer";
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    private static ExecutorService sExecutor;
+
+    interface Callback {
+        void onTextPrepared(@NonNull CharSequence text);
+    }
+
+    /**
+     * A pending text preparation
+     */
+    static final class Task implements Runnable {
+        private final CharSequence mMarkup;
+        private final TextPaint mPaint;
+        private final int mWidth;
+        private final Callback mCallback;
+        private volatile boolean mCancelled;
+        private CharSequence mResult;
+
+        Task(final CharSequence markup, @Nullable final TextPaint paint, final int width, final Callback callback) {
+            mMarkup = markup;
+            mPaint = paint;
+            mWidth = width;
+            mCallback = callback;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+
+            if (null == mResult) {
+                mResult = prepare(mMarkup, mPaint, mWidth);
+                MAIN_HANDLER.post(this);
+            } else {
+                mCallback.onTextPrepared(mResult);
+            }
+        }
+
+        @MainThread
+        void cancel() {
+            mCancelled = true;
+            MAIN_HANDLER.removeCallbacks(this);
+        }
+    }
+
+    private TooltipTextPreparer() { }
+
+    /**
+     * @param markup the html text
+     * @param paint  the paint used to lay out the text, or null to only parse the markup
+     * @param width  the max text width, in pixels
+     * @return the pending task, which can be cancelled
+     */
+    @MainThread
+    static Task prepare(
+        @NonNull final CharSequence markup, @Nullable final TextPaint paint, final int width, @NonNull final Callback callback) {
+        final Task task = new Task(markup, paint, width, callback);
+        getExecutor().execute(task);
+        return task;
+    }
+
+    @WorkerThread
+    private static CharSequence prepare(final CharSequence markup, @Nullable final TextPaint paint, final int width) {
+        final CharSequence text = HtmlCache.fromHtml(markup);
+
+        if (null != paint && width > 0) {
+            // the layout is discarded, it's only needed to measure the text glyphs
+            new StaticLayout(text, paint, width, Layout.Alignment.ALIGN_NORMAL, 1, 0, false);
+        }
+
+        log(TAG, VERBOSE, "prepared text (width: %d)", width);
+        return text;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (null == sExecutor) {
+            sExecutor = Executors.newSingleThreadExecutor(
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(@NonNull final Runnable runnable) {
+                        final Thread thread = new Thread(
+                            new Runnable() {
+                                @Override
+                                public void run() {
+                                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                    runnable.run();
+                                }
+                            }, TAG);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        }
+        return sExecutor;
+    }
+}
@@ -0,0 +1,230 @@
+package it.sephiroth.android.library.tooltip;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+
+import static android.util.Log.VERBOSE;
+import static it.sephiroth.android.library.tooltip.Utils.log;
+
+/**
+ * Hashed timer wheel shared by all the tooltips of a looper thread, used for the show, hide and
+ * activate delays.<br />
+ * Deadlines are rounded up to the next {@link #TICK_MS} tick and stored in doubly linked buckets, so
+ * scheduling and cancelling a timeout are O(1). A single Handler message is pending at any time,
+ * for the first non empty bucket, and none when the wheel is empty.<br />
+ * Every timeout has an owner (the tooltip Activity), so all the timeouts of a window can be cancelled at once.
+ */
+final class TooltipTimer {
+    private static final String TAG = "TooltipTimer";
+    static final int TICK_MS = 16;
+    private static final int WHEEL_SIZE = 64;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final ThreadLocal<TooltipTimer> TIMERS = new ThreadLocal<>();
+
+    /**
+     * A reusable timeout. Scheduling a pending timeout reschedules it.
+     */
+    static final class Timeout {
+        final Runnable task;
+        Object owner;
+        int rounds;
+        int slot = -1;
+        Timeout prev;
+        Timeout next;
+
+        Timeout(@NonNull final Runnable task) {
+            this.task = task;
+        }
+
+        boolean isPending() {
+            return slot >= 0;
+        }
+    }
+
+    private final Timeout[] mWheel = new Timeout[WHEEL_SIZE];
+    private final Handler mHandler;
+    private final long mStartTime;
+    private final ArrayList<Timeout> mExpired = new ArrayList<>();
+    private final Runnable mTickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mWakeTick = -1;
+            advance();
+            scheduleWake();
+        }
+    };
+    private long mTick;
+    private long mWakeTick = -1;
+    private int mSize;
+
+    private TooltipTimer(final Looper looper) {
+        mHandler = new Handler(looper);
+        mStartTime = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * @return the timer of the current looper thread
+     */
+    static TooltipTimer get() {
+        TooltipTimer timer = TIMERS.get();
+        if (null == timer) {
+            final Looper looper = Looper.myLooper();
+            if (null == looper) {
+                throw new IllegalStateException("TooltipTimer requires a looper thread");
+            }
+            timer = new TooltipTimer(looper);
+            TIMERS.set(timer);
+        }
+        return timer;
+    }
+
+    /**
+     * @param timeout the timeout to (re)schedule
+     * @param delay   delay in milliseconds
+     * @param owner   the timeout owner, see {@link #cancelAll(Object)}
+     */
+    void schedule(@NonNull final Timeout timeout, final long delay, @Nullable final Object owner) {
+        cancel(timeout);
+
+        if (mSize == 0) {
+            // nothing to expire in between, just catch up with the current time
+            mTick = currentTick();
+        }
+
+        long deadlineTick = (SystemClock.uptimeMillis() + Math.max(0, delay) - mStartTime + TICK_MS - 1) / TICK_MS;
+        if (deadlineTick <= mTick) {
+            deadlineTick = mTick + 1;
+        }
+
+        timeout.owner = owner;
+        timeout.rounds = (int) ((deadlineTick - mTick - 1) / WHEEL_SIZE);
+        timeout.slot = (int) (deadlineTick & WHEEL_MASK);
+        timeout.prev = null;
+        timeout.next = mWheel[timeout.slot];
+        if (null != timeout.next) {
+            timeout.next.prev = timeout;
+        }
+        mWheel[timeout.slot] = timeout;
+        mSize++;
+
+        scheduleWake();
+    }
+
+    void cancel(@NonNull final Timeout timeout) {
+        if (!timeout.isPending()) {
+            return;
+        }
+
+        if (null != timeout.prev) {
+            timeout.prev.next = timeout.next;
+        } else {
+            mWheel[timeout.slot] = timeout.next;
+        }
+        if (null != timeout.next) {
+            timeout.next.prev = timeout.prev;
+        }
+
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slot = -1;
+        timeout.owner = null;
+        mSize--;
+
+        if (mSize == 0 && mWakeTick >= 0) {
+            mHandler.removeCallbacks(mTickRunnable);
+            mWakeTick = -1;
+        }
+    }
+
+    /**
+     * Cancel all the pending timeouts of the given owner
+     *
+     * @return the number of cancelled timeouts
+     */
+    int cancelAll(@NonNull final Object owner) {
+        int count = 0;
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            Timeout timeout = mWheel[i];
+            while (null != timeout) {
+                final Timeout next = timeout.next;
+                if (timeout.owner == owner) {
+                    cancel(timeout);
+                    count++;
+                }
+                timeout = next;
+            }
+        }
+        log(TAG, VERBOSE, "cancelled %d timeouts", count);
+        return count;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    private long currentTick() {
+        return (SystemClock.uptimeMillis() - mStartTime) / TICK_MS;
+    }
+
+    /**
+     * Process all the buckets up to the current time. Expired tasks run once the wheel is consistent again,
+     * since they can schedule or cancel other timeouts.
+     */
+    private void advance() {
+        final long target = currentTick();
+
+        while (mTick < target && mSize > 0) {
+            mTick++;
+            Timeout timeout = mWheel[(int) (mTick & WHEEL_MASK)];
+            while (null != timeout) {
+                final Timeout next = timeout.next;
+                if (timeout.rounds <= 0) {
+                    cancel(timeout);
+                    mExpired.add(timeout);
+                } else {
+                    timeout.rounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        if (mSize == 0) {
+            mTick = target;
+        }
+
+        for (int i = 0; i < mExpired.size(); i++) {
+            mExpired.get(i).task.run();
+        }
+        mExpired.clear();
+    }
+
+    /**
+     * Wake up at the first non empty bucket
+     */
+    private void scheduleWake() {
+        if (mSize == 0) {
+            return;
+        }
+
+        long wakeTick = mTick + WHEEL_SIZE;
+        for (int i = 1; i <= WHEEL_SIZE; i++) {
+            if (null != mWheel[(int) ((mTick + i) & WHEEL_MASK)]) {
+                wakeTick = mTick + i;
+                break;
+            }
+        }
+
+        if (mWakeTick >= 0 && mWakeTick <= wakeTick) {
+            return;
+        }
+
+        mHandler.removeCallbacks(mTickRunnable);
+        mWakeTick = wakeTick;
+        mHandler.postAtTime(mTickRunnable, mStartTime + wakeTick * TICK_MS);
+    }
+}
@@ -0,0 +1,493 @@
+package it.sephiroth.android.library.tooltip;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static it.sephiroth.android.library.tooltip.PlacementEngine.BOTTOM;
+import static it.sephiroth.android.library.tooltip.PlacementEngine.CENTER;
+import static it.sephiroth.android.library.tooltip.PlacementEngine.LEFT;
+import static it.sephiroth.android.library.tooltip.PlacementEngine.NONE;
+import static it.sephiroth.android.library.tooltip.PlacementEngine.RIGHT;
+import static it.sephiroth.android.library.tooltip.PlacementEngine.TOP;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PlacementEngineTest {
+    private static final int[] ALL = {TOP, BOTTOM, LEFT, RIGHT, CENTER};
+    private static final int ITERATIONS = 20000;
+
+    private PlacementEngine mEngine;
+    private PlacementEngine.Result mResult;
+
+    @Before
+    public void setUp() {
+        mEngine = new PlacementEngine();
+        mResult = new PlacementEngine.Result();
+    }
+
+    @Test
+    public void placeMatchesLegacyCalculatePositions() {
+        final Random random = new Random(1);
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            final Input input = Input.random(random);
+            input.apply(mEngine);
+
+            for (int gravity : ALL) {
+                final boolean center = gravity == CENTER;
+                final int overlayWidth = center ? 0 : input.overlayWidth;
+                final int overlayHeight = center ? 0 : input.overlayHeight;
+                final boolean fits =
+                    mEngine.place(gravity, input.width, input.height, overlayWidth, overlayHeight, input.checkEdges, mResult);
+
+                final Legacy legacy = new Legacy(input);
+                final boolean legacyFits = legacy.calculatePosition(gravity, overlayWidth, overlayHeight);
+
+                assertEquals(input + " " + gravity, legacyFits, fits);
+                if (fits) {
+                    assertRect(input + " " + gravity, legacy.draw, mResult);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void chooseMatchesLegacyFallbackOrder() {
+        final Random random = new Random(2);
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            final Input input = Input.random(random);
+            final int[] gravities = shuffled(random);
+            input.apply(mEngine);
+
+            final boolean found =
+                mEngine.choose(gravities, input.width, input.height, input.overlayWidth, input.overlayHeight, input.checkEdges,
+                    mResult
+                );
+
+            final Legacy legacy = new Legacy(input);
+            final int legacyGravity = legacy.calculatePositions(gravities);
+
+            // both fail only when no gravity fits
+            assertEquals(input.toString(), NONE != legacyGravity, found);
+
+            // the legacy order is kept whenever its choice isn't clipped by the screen edges
+            if (found && (!input.checkEdges || clippedArea(input, legacy.draw) == 0)) {
+                assertEquals(input.toString(), legacyGravity, mResult.gravity);
+                assertRect(input.toString(), legacy.draw, mResult);
+            }
+        }
+    }
+
+    @Test
+    public void chooseFuzz() {
+        final Random random = new Random(3);
+        final PlacementEngine.Result candidate = new PlacementEngine.Result();
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            final Input input = Input.random(random);
+            final int[] gravities = shuffled(random);
+            input.apply(mEngine);
+
+            final boolean found =
+                mEngine.choose(gravities, input.width, input.height, input.overlayWidth, input.overlayHeight, input.checkEdges,
+                    mResult
+                );
+
+            boolean anyFits = false;
+            long bestClipped = Long.MAX_VALUE;
+            int best = NONE;
+
+            for (int gravity : gravities) {
+                final boolean center = gravity == CENTER;
+                if (mEngine.place(gravity, input.width, input.height, center ? 0 : input.overlayWidth,
+                    center ? 0 : input.overlayHeight, input.checkEdges, candidate
+                )) {
+                    anyFits = true;
+                    final long clipped = input.checkEdges ? clippedArea(input, candidate) : 0;
+                    if (clipped < bestClipped) {
+                        bestClipped = clipped;
+                        best = gravity;
+                    }
+                }
+            }
+
+            assertEquals(input.toString(), anyFits, found);
+            if (found) {
+                // the least clipped candidate, the first one in order of preference on equal score
+                assertEquals(input.toString(), best, mResult.gravity);
+                assertEquals(input.toString(), bestClipped, input.checkEdges ? clippedArea(input, mResult) : 0);
+                assertTrue(input.toString(), mResult.width() >= 0 && mResult.height() >= 0);
+            }
+        }
+    }
+
+    @Test
+    public void chooseFailsWhenNothingFits() {
+        // the anchor fills the screen, no room on any side and CENTER isn't a candidate
+        mEngine.setScreen(0, 0, 100, 100);
+        mEngine.setAnchor(0, 0, 100, 100);
+
+        assertFalse(mEngine.choose(new int[]{TOP, BOTTOM, LEFT, RIGHT}, 50, 50, 0, 0, true, mResult));
+        assertTrue(mEngine.choose(new int[]{TOP, CENTER}, 50, 50, 0, 0, true, mResult));
+        assertEquals(CENTER, mResult.gravity);
+    }
+
+    @Test
+    public void chooseSkipsGravitiesWithoutSpace() {
+        mEngine.setScreen(0, 0, 100, 100);
+        mEngine.setAnchor(40, 0, 60, 20);
+
+        assertTrue(mEngine.choose(new int[]{TOP, BOTTOM}, 20, 20, 0, 0, true, mResult));
+        assertEquals(BOTTOM, mResult.gravity);
+        assertRect(40, 20, 60, 40, mResult);
+    }
+
+    @Test
+    public void chooseStopsAtTheFirstUnclippedCandidate() {
+        // both sides fit without any clipping: the preferred one is kept
+        mEngine.setScreen(0, 0, 100, 100);
+        mEngine.setAnchor(40, 40, 60, 60);
+
+        assertTrue(mEngine.choose(new int[]{TOP, BOTTOM}, 20, 20, 0, 0, true, mResult));
+        assertEquals(TOP, mResult.gravity);
+        assertRect(40, 20, 60, 40, mResult);
+
+        assertTrue(mEngine.choose(new int[]{BOTTOM, TOP}, 20, 20, 0, 0, true, mResult));
+        assertEquals(BOTTOM, mResult.gravity);
+        assertRect(40, 60, 60, 80, mResult);
+    }
+
+    @Test
+    public void chooseSkipsTheEarlyExitWhenClipped() {
+        // TOP fits the screen but lies under the top rule, BOTTOM isn't clipped at all
+        mEngine.setScreen(0, 0, 100, 100);
+        mEngine.setTopRule(30);
+        mEngine.setAnchor(40, 20, 60, 40);
+
+        assertTrue(mEngine.place(TOP, 20, 20, 0, 0, true, mResult));
+        assertTrue(mEngine.choose(new int[]{TOP, BOTTOM}, 20, 20, 0, 0, true, mResult));
+        assertEquals(BOTTOM, mResult.gravity);
+        assertRect(40, 40, 60, 60, mResult);
+    }
+
+    @Test
+    public void chooseKeepsThePreferredGravityOnEqualClipping() {
+        // wider than the screen: TOP and BOTTOM are clipped by the same area
+        mEngine.setScreen(0, 0, 100, 100);
+        mEngine.setAnchor(40, 40, 60, 60);
+
+        assertTrue(mEngine.choose(new int[]{TOP, BOTTOM}, 200, 20, 0, 0, true, mResult));
+        assertEquals(TOP, mResult.gravity);
+
+        assertTrue(mEngine.choose(new int[]{BOTTOM, TOP}, 200, 20, 0, 0, true, mResult));
+        assertEquals(BOTTOM, mResult.gravity);
+    }
+
+    @Test
+    public void chooseIgnoresClippingWithoutEdgeCheck() {
+        mEngine.setScreen(0, 0, 100, 100);
+        mEngine.setAnchor(40, 0, 60, 20);
+
+        assertTrue(mEngine.choose(new int[]{TOP, BOTTOM}, 20, 20, 0, 0, false, mResult));
+        assertEquals(TOP, mResult.gravity);
+        assertRect(40, -20, 60, 0, mResult);
+    }
+
+    @Test
+    public void computeAnchorPoint() {
+        mEngine.setScreen(0, 0, 100, 100);
+        mEngine.setAnchor(40, 40, 60, 60);
+
+        assertTrue(mEngine.place(BOTTOM, 20, 20, 0, 0, true, mResult));
+        mEngine.computeAnchorPoint(5, mResult);
+        assertEquals(5, mResult.anchorX);
+        assertEquals(0, mResult.anchorY);
+
+        assertTrue(mEngine.place(LEFT, 20, 20, 0, 0, true, mResult));
+        mEngine.computeAnchorPoint(5, mResult);
+        assertEquals(20, mResult.anchorX);
+        assertEquals(5, mResult.anchorY);
+    }
+
+    private static int[] shuffled(final Random random) {
+        final int[] gravities = ALL.clone();
+        for (int i = gravities.length - 1; i > 0; i--) {
+            final int j = random.nextInt(i + 1);
+            final int tmp = gravities[i];
+            gravities[i] = gravities[j];
+            gravities[j] = tmp;
+        }
+        // the first gravity is always a candidate, the others not necessarily
+        final int count = 1 + random.nextInt(gravities.length);
+        final int[] result = new int[count];
+        System.arraycopy(gravities, 0, result, 0, count);
+        return result;
+    }
+
+    private static long clippedArea(final Input input, final PlacementEngine.Result rect) {
+        return clippedArea(input, rect.left, rect.top, rect.right, rect.bottom);
+    }
+
+    private static long clippedArea(final Input input, final int[] rect) {
+        return clippedArea(input, rect[0], rect[1], rect[2], rect[3]);
+    }
+
+    private static long clippedArea(final Input input, final int l, final int t, final int r, final int b) {
+        final long total = (long) (r - l) * (b - t);
+        final long width = Math.min(r, input.screen[2] + input.tolerance) - Math.max(l, input.screen[0] - input.tolerance);
+        final long height =
+            Math.min(b, input.screen[3] + input.tolerance) - Math.max(t, input.screen[1] + input.topRule - input.tolerance);
+        return width <= 0 || height <= 0 ? total : total - width * height;
+    }
+
+    private static void assertRect(final String message, final int[] expected, final PlacementEngine.Result actual) {
+        assertEquals(message, expected[0], actual.left);
+        assertEquals(message, expected[1], actual.top);
+        assertEquals(message, expected[2], actual.right);
+        assertEquals(message, expected[3], actual.bottom);
+    }
+
+    private static void assertRect(
+        final int left, final int top, final int right, final int bottom, final PlacementEngine.Result actual) {
+        assertRect(actual.toString(), new int[]{left, top, right, bottom}, actual);
+    }
+
+    private static final class Input {
+        final int[] screen = new int[4];
+        final int[] anchor = new int[4];
+        int topRule;
+        int tolerance;
+        int width;
+        int height;
+        int overlayWidth;
+        int overlayHeight;
+        boolean checkEdges;
+
+        static Input random(final Random random) {
+            final Input input = new Input();
+            input.screen[0] = random.nextInt(50);
+            input.screen[1] = random.nextInt(100);
+            input.screen[2] = input.screen[0] + 100 + random.nextInt(1200);
+            input.screen[3] = input.screen[1] + 100 + random.nextInt(2000);
+
+            // anchors can be partially or completely offscreen, or empty (a point)
+            input.anchor[0] = input.screen[0] - 100 + random.nextInt(input.screen[2] - input.screen[0] + 200);
+            input.anchor[1] = input.screen[1] - 100 + random.nextInt(input.screen[3] - input.screen[1] + 200);
+            input.anchor[2] = input.anchor[0] + (random.nextInt(4) == 0 ? 0 : random.nextInt(400));
+            input.anchor[3] = input.anchor[1] + (random.nextInt(4) == 0 ? 0 : random.nextInt(400));
+
+            input.topRule = random.nextBoolean() ? 0 : random.nextInt(100);
+            input.tolerance = random.nextBoolean() ? 0 : random.nextInt(20);
+            input.width = 1 + random.nextInt(1500);
+            input.height = 1 + random.nextInt(1500);
+            input.overlayWidth = random.nextBoolean() ? 0 : random.nextInt(100);
+            input.overlayHeight = random.nextBoolean() ? 0 : random.nextInt(100);
+            input.checkEdges = random.nextInt(4) != 0;
+            return input;
+        }
+
+        void apply(final PlacementEngine engine) {
+            engine.setScreen(screen[0], screen[1], screen[2], screen[3]);
+            engine.setAnchor(anchor[0], anchor[1], anchor[2], anchor[3]);
+            engine.setTopRule(topRule);
+            engine.setTolerance(tolerance);
+        }
+
+        @Override
+        public String toString() {
+            return "Input(screen: " + java.util.Arrays.toString(screen) + ", anchor: " + java.util.Arrays.toString(anchor)
+                + ", topRule: " + topRule + ", tolerance: " + tolerance + ", size: " + width + "x" + height
+                + ", overlay: " + overlayWidth + "x" + overlayHeight + ", checkEdges: " + checkEdges + ")";
+        }
+    }
+
+    /**
+     * The calculatePosition* methods of TooltipViewImpl before the PlacementEngine, on plain int rects.
+     * Rect.centerX(), Rect.offset() and Rect.contains() are inlined.
+     */
+    private static final class Legacy {
+        final Input input;
+        final int[] draw = new int[4];
+
+        Legacy(final Input input) {
+            this.input = input;
+        }
+
+        /**
+         * @return the first gravity with enough space, or NONE
+         */
+        int calculatePositions(final int[] gravities) {
+            for (int gravity : gravities) {
+                final boolean center = gravity == CENTER;
+                if (calculatePosition(gravity, center ? 0 : input.overlayWidth, center ? 0 : input.overlayHeight)) {
+                    return gravity;
+                }
+            }
+            return NONE;
+        }
+
+        boolean calculatePosition(final int gravity, final int overlayWidth, final int overlayHeight) {
+            final int screenTop = input.screen[1] + input.topRule;
+            if (gravity == BOTTOM) {
+                return !calculatePositionBottom(overlayHeight, screenTop);
+            } else if (gravity == TOP) {
+                return !calculatePositionTop(overlayHeight, screenTop);
+            } else if (gravity == RIGHT) {
+                return !calculatePositionRight(overlayWidth, screenTop);
+            } else if (gravity == LEFT) {
+                return !calculatePositionLeft(overlayWidth, screenTop);
+            }
+            calculatePositionCenter(screenTop);
+            return true;
+        }
+
+        private int centerX() {
+            return (input.anchor[0] + input.anchor[2]) >> 1;
+        }
+
+        private int centerY() {
+            return (input.anchor[1] + input.anchor[3]) >> 1;
+        }
+
+        private void set(final int left, final int top, final int right, final int bottom) {
+            draw[0] = left;
+            draw[1] = top;
+            draw[2] = right;
+            draw[3] = bottom;
+        }
+
+        private void offset(final int dx, final int dy) {
+            draw[0] += dx;
+            draw[2] += dx;
+            draw[1] += dy;
+            draw[3] += dy;
+        }
+
+        private boolean contains() {
+            final int[] s = input.screen;
+            final int t = input.tolerance;
+            return s[0] < s[2] && s[1] < s[3]
+                && s[0] <= draw[0] + t && s[1] <= draw[1] + t && s[2] >= draw[2] - t && s[3] >= draw[3] - t;
+        }
+
+        private void calculatePositionCenter(final int screenTop) {
+            final int[] s = input.screen;
+            set(centerX() - input.width / 2, centerY() - input.height / 2, centerX() + input.width / 2,
+                centerY() + input.height / 2
+            );
+
+            if (input.checkEdges && !contains()) {
+                if (draw[3] > s[3]) {
+                    offset(0, s[3] - draw[3]);
+                } else if (draw[1] < screenTop) {
+                    offset(0, screenTop - draw[1]);
+                }
+                if (draw[2] > s[2]) {
+                    offset(s[2] - draw[2], 0);
+                } else if (draw[0] < s[0]) {
+                    offset(s[0] - draw[0], 0);
+                }
+            }
+        }
+
+        private boolean calculatePositionLeft(final int overlayWidth, final int screenTop) {
+            final int[] s = input.screen;
+            final int anchorWidth = input.anchor[2] - input.anchor[0];
+            set(input.anchor[0] - input.width, centerY() - input.height / 2, input.anchor[0], centerY() + input.height / 2);
+
+            if ((anchorWidth / 2) < overlayWidth) {
+                offset(-(overlayWidth - (anchorWidth / 2)), 0);
+            }
+
+            if (input.checkEdges && !contains()) {
+                if (draw[3] > s[3]) {
+                    offset(0, s[3] - draw[3]);
+                } else if (draw[1] < screenTop) {
+                    offset(0, screenTop - draw[1]);
+                }
+                if (draw[0] < s[0]) {
+                    return true;
+                } else if (draw[2] > s[2]) {
+                    offset(s[2] - draw[2], 0);
+                }
+            }
+            return false;
+        }
+
+        private boolean calculatePositionRight(final int overlayWidth, final int screenTop) {
+            final int[] s = input.screen;
+            final int anchorWidth = input.anchor[2] - input.anchor[0];
+            set(input.anchor[2], centerY() - input.height / 2, input.anchor[2] + input.width, centerY() + input.height / 2);
+
+            if ((anchorWidth / 2) < overlayWidth) {
+                offset(overlayWidth - anchorWidth / 2, 0);
+            }
+
+            if (input.checkEdges && !contains()) {
+                if (draw[3] > s[3]) {
+                    offset(0, s[3] - draw[3]);
+                } else if (draw[1] < screenTop) {
+                    offset(0, screenTop - draw[1]);
+                }
+                if (draw[2] > s[2]) {
+                    return true;
+                } else if (draw[0] < s[0]) {
+                    offset(s[0] - draw[0], 0);
+                }
+            }
+            return false;
+        }
+
+        private boolean calculatePositionTop(final int overlayHeight, final int screenTop) {
+            final int[] s = input.screen;
+            final int anchorHeight = input.anchor[3] - input.anchor[1];
+            set(centerX() - input.width / 2, input.anchor[1] - input.height, centerX() + input.width / 2, input.anchor[1]);
+
+            if ((anchorHeight / 2) < overlayHeight) {
+                offset(0, -(overlayHeight - (anchorHeight / 2)));
+            }
+
+            if (input.checkEdges && !contains()) {
+                if (draw[2] > s[2]) {
+                    offset(s[2] - draw[2], 0);
+                } else if (draw[0] < s[0]) {
+                    offset(-draw[0], 0);
+                }
+                if (draw[1] < screenTop) {
+                    return true;
+                } else if (draw[3] > s[3]) {
+                    offset(0, s[3] - draw[3]);
+                }
+            }
+            return false;
+        }
+
+        private boolean calculatePositionBottom(final int overlayHeight, final int screenTop) {
+            final int[] s = input.screen;
+            final int anchorHeight = input.anchor[3] - input.anchor[1];
+            set(centerX() - input.width / 2, input.anchor[3], centerX() + input.width / 2, input.anchor[3] + input.height);
+
+            if (anchorHeight / 2 < overlayHeight) {
+                offset(0, overlayHeight - anchorHeight / 2);
+            }
+
+            if (input.checkEdges && !contains()) {
+                if (draw[2] > s[2]) {
+                    offset(s[2] - draw[2], 0);
+                } else if (draw[0] < s[0]) {
+                    offset(-draw[0], 0);
+                }
+                if (draw[3] > s[3]) {
+                    return true;
+                } else if (draw[1] < screenTop) {
+                    offset(0, screenTop - draw[1]);
+                }
+            }
+            return false;
+        }
+    }
+}
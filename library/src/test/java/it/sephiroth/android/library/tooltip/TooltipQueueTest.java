@@ -0,0 +1,127 @@
+package it.sephiroth.android.library.tooltip;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TooltipQueueTest {
+    private TooltipQueue<Item> mQueue;
+
+    @Before
+    public void setUp() {
+        mQueue = new TooltipQueue<>();
+    }
+
+    @Test
+    public void pollByPriorityThenArrival() {
+        final Item low = new Item(1, 0);
+        final Item high = new Item(2, 5);
+        final Item first = new Item(3, 1);
+        final Item second = new Item(4, 1);
+        mQueue.add(low);
+        mQueue.add(first);
+        mQueue.add(high);
+        mQueue.add(second);
+
+        assertSame(high, mQueue.poll());
+        assertSame(first, mQueue.poll());
+        assertSame(second, mQueue.poll());
+        assertSame(low, mQueue.poll());
+        assertNull(mQueue.poll());
+    }
+
+    @Test
+    public void removeAllWithQueuedEntries() {
+        final Item first = new Item(1, 0);
+        final Item second = new Item(2, 3);
+        mQueue.add(first);
+        mQueue.add(second);
+
+        final List<Item> removed = mQueue.removeAll();
+
+        assertEquals(2, removed.size());
+        assertSame(second, removed.get(0));
+        assertSame(first, removed.get(1));
+        assertTrue(mQueue.isEmpty());
+        assertFalse(mQueue.contains(1));
+        assertFalse(mQueue.contains(2));
+        // nothing left to promote once a slot is free
+        assertNull(mQueue.poll());
+    }
+
+    @Test
+    public void removeAllWithEmptyQueue() {
+        assertTrue(mQueue.removeAll().isEmpty());
+        assertNull(mQueue.poll());
+    }
+
+    @Test
+    public void removeByIdRemovesEveryMatchingEntry() {
+        final Item first = new Item(1, 0);
+        final Item other = new Item(2, 0);
+        final Item duplicate = new Item(1, 2);
+        mQueue.add(first);
+        mQueue.add(other);
+        mQueue.add(duplicate);
+
+        assertTrue(mQueue.contains(1));
+        final List<Item> removed = mQueue.remove(1);
+
+        assertEquals(2, removed.size());
+        assertSame(duplicate, removed.get(0));
+        assertSame(first, removed.get(1));
+        assertFalse(mQueue.contains(1));
+        assertEquals(1, mQueue.size());
+        assertSame(other, mQueue.poll());
+    }
+
+    @Test
+    public void removeByIdWithoutMatch() {
+        final Item item = new Item(1, 0);
+        mQueue.add(item);
+
+        assertTrue(mQueue.remove(2).isEmpty());
+        assertTrue(mQueue.contains(item));
+        assertEquals(1, mQueue.size());
+    }
+
+    @Test
+    public void removeEntry() {
+        final Item first = new Item(1, 0);
+        final Item second = new Item(1, 0);
+        mQueue.add(first);
+        mQueue.add(second);
+
+        assertTrue(mQueue.remove(first));
+        assertFalse(mQueue.contains(first));
+        assertTrue(mQueue.contains(second));
+        assertFalse(mQueue.remove(first));
+    }
+
+    private static final class Item implements TooltipQueue.Entry {
+        private final int mId;
+        private final int mPriority;
+
+        Item(final int id, final int priority) {
+            mId = id;
+            mPriority = priority;
+        }
+
+        @Override
+        public int getTooltipId() {
+            return mId;
+        }
+
+        @Override
+        public int getPriority() {
+            return mPriority;
+        }
+    }
+}